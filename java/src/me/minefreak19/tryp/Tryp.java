@@ -1,35 +1,82 @@
 package me.minefreak19.tryp;
 
+import me.minefreak19.tryp.cache.ProgramCache;
 import me.minefreak19.tryp.eval.Interpreter;
-import me.minefreak19.tryp.lex.FileLocation;
-import me.minefreak19.tryp.lex.Lexer;
-import me.minefreak19.tryp.parse.Parser;
+import me.minefreak19.tryp.lex.MappedSource;
+import me.minefreak19.tryp.parse.Optimizer;
+import me.minefreak19.tryp.parse.ProgramLoader;
 import me.minefreak19.tryp.parse.Resolver;
+import me.minefreak19.tryp.tree.Stmt;
+import me.minefreak19.tryp.util.Diagnostics;
+import me.minefreak19.tryp.vm.VirtualMachine;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Tryp {
 	private static final Interpreter interpreter = new Interpreter();
-	public static boolean hadError = false;
+	private static VirtualMachine vm;
+	private static Engine engine = Engine.TREE;
+	private static ProgramCache cache = new ProgramCache(ProgramCache.defaultDir());
+
+	private enum Engine {
+		/** The tree-walking {@link Interpreter}. */
+		TREE,
+		/** The bytecode {@link VirtualMachine}. */
+		VM,
+	}
 
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.err.println("Usage: tryp [sourcefile]");
-			System.exit(64);
-		} else if (args.length == 1) {
-			runFile(new File(args[0]));
+		var files = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--engine=")) {
+				switch (arg.substring("--engine=".length())) {
+				case "tree" -> engine = Engine.TREE;
+				case "vm" -> engine = Engine.VM;
+				default -> usage();
+				}
+			} else if (arg.equals("--no-cache")) {
+				cache = null;
+			} else {
+				files.add(arg);
+			}
+		}
+
+		if (engine == Engine.VM) vm = new VirtualMachine();
+
+		if (files.size() > 1) {
+			usage();
+		} else if (files.size() == 1) {
+			runFile(new File(files.get(0)));
 		} else {
 			runREPL();
 		}
 	}
 
+	private static void usage() {
+		System.err.println("Usage: tryp [--engine=tree|vm] [--no-cache] [sourcefile]");
+		System.exit(64);
+	}
+
 	private static void runFile(File file) throws IOException {
-		String source = Files.readString(file.toPath());
-		run(source, file.getName());
+		var diagnostics = new Diagnostics(System.err);
+
+		var cached = cache == null ? null : cache.entry(file.toPath(), file.getName());
+		List<Stmt> program = cached == null ? null : cached.load();
+		if (program == null) {
+			var loader = new ProgramLoader(diagnostics);
+			program = compile(loader, MappedSource.read(file.toPath()), file.toPath(), file.getName(), diagnostics);
+			if (program == null) return;
+
+			if (cached != null) cached.store(loader.resolved(), loader.included(), program);
+		}
+
+		execute(program, diagnostics);
 	}
 
 	private static void runREPL() throws IOException {
@@ -44,18 +91,33 @@ public class Tryp {
 		}
 	}
 
-	private static void run(String source, String fileName) {
-		Lexer lexer = new Lexer(source, new FileLocation(fileName, 1, 1));
-		var tokens = lexer.tokens();
+	private static void run(CharSequence source, String fileName) {
+		// a fresh one per run, so an error on one REPL line doesn't stop the next from running
+		var diagnostics = new Diagnostics(System.err);
+
+		var program = compile(new ProgramLoader(diagnostics), source, null, fileName, diagnostics);
+		if (program != null) execute(program, diagnostics);
+	}
 
-		Parser parser = new Parser(tokens);
-		var program = parser.parse();
-		if (hadError) return;
+	/**
+	 * @return The parsed, resolved and optimized program, or null if it has errors.
+	 */
+	private static List<Stmt> compile(ProgramLoader loader, CharSequence source, Path file, String fileName,
+	                                  Diagnostics diagnostics) {
+		var program = loader.load(source, file, fileName);
+		if (diagnostics.hadError()) return null;
 
-		var resolver = new Resolver(interpreter);
+		var resolver = new Resolver(diagnostics);
 		resolver.resolve(program);
-		if (hadError) return;
+		if (diagnostics.hadError()) return null;
+
+		return new Optimizer().optimize(program);
+	}
 
-		interpreter.interpret(program);
+	private static void execute(List<Stmt> program, Diagnostics diagnostics) {
+		switch (engine) {
+		case TREE -> interpreter.interpret(program);
+		case VM -> vm.interpret(program, diagnostics);
+		}
 	}
 }
@@ -0,0 +1,195 @@
+package me.minefreak19.tryp.cache;
+
+import me.minefreak19.tryp.parse.ProgramLoader;
+import me.minefreak19.tryp.tree.Stmt;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Resolved programs saved on disk, so that running an unchanged script again skips lexing, parsing and resolving.
+ * <p>
+ * An entry is named after a hash of the compiler version, the script's canonical path, its name and its contents.
+ * It lists what each include directive resolved to, and every file the script included along with a hash of its contents.
+ * It is only used if every directive still names the same file from the current working directory,
+ * and none of those files have changed either.
+ * Only programs that compiled without errors are saved.
+ * <p>
+ * The cache is only ever an optimisation: an entry that can't be read or written is simply ignored.
+ */
+public final class ProgramCache {
+	private static final int MAGIC = 0x54525950; // "TRYP"
+	/**
+	 * Bump whenever the layout of an entry, the tree, the Resolver's annotations or their serialized form change.
+	 */
+	private static final int FORMAT_VERSION = 6;
+	private static final String HASH = "SHA-256";
+
+	private final Path dir;
+	private final String compilerVersion;
+
+	/**
+	 * A script whose contents have been hashed, ready to be looked up or saved.
+	 */
+	public final class Entry {
+		private final Path file;
+
+		private Entry(Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * @return The cached program, or null if there is none for the current version of every file it uses.
+		 */
+		public List<Stmt> load() {
+			try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				if (in.readInt() != MAGIC) return null;
+
+				var reader = new TreeReader(in);
+				int directives = reader.readInt();
+				for (int i = 0; i < directives; i++) {
+					String include = reader.readString();
+					var path = Path.of(reader.readString());
+
+					if (!ProgramLoader.resolveInclude(include).equals(path)) return null;
+				}
+
+				int includes = reader.readInt();
+				for (int i = 0; i < includes; i++) {
+					var path = Path.of(reader.readString());
+					var hash = new byte[in.readUnsignedByte()];
+					in.readFully(hash);
+
+					if (!Arrays.equals(hash, hash(path))) return null;
+				}
+
+				return reader.readProgram();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Saves {@code program}, compiled from this script and the files it included.
+		 *
+		 * @param resolved What each include directive in those files resolved to.
+		 */
+		public void store(List<ProgramLoader.ResolvedInclude> resolved, List<Path> included, List<Stmt> program) {
+			Path tmp = null;
+			try {
+				Files.createDirectories(dir);
+				// written next to the entry and moved in place, so a concurrent run never reads half of it
+				tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+				try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+					out.writeInt(MAGIC);
+
+					var writer = new TreeWriter(out);
+					writer.writeInt(resolved.size());
+					for (var include : resolved) {
+						writer.writeString(include.path());
+						writer.writeString(include.file().toString());
+					}
+
+					writer.writeInt(included.size());
+					for (Path path : included) {
+						byte[] hash = hash(path);
+						writer.writeString(path.toString());
+						out.writeByte(hash.length);
+						out.write(hash);
+					}
+
+					writer.writeProgram(program);
+				}
+
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				try {
+					if (tmp != null) Files.deleteIfExists(tmp);
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param dir Where entries are kept. It is created when the first one is saved.
+	 */
+	public ProgramCache(Path dir) {
+		this.dir = dir;
+		this.compilerVersion = compilerVersion();
+	}
+
+	/**
+	 * @return {@code $XDG_CACHE_HOME/tryp}, or {@code ~/.cache/tryp}.
+	 */
+	public static Path defaultDir() {
+		String xdg = System.getenv("XDG_CACHE_HOME");
+		if (xdg != null && !xdg.isEmpty()) return Path.of(xdg, "tryp");
+
+		return Path.of(System.getProperty("user.home"), ".cache", "tryp");
+	}
+
+	/**
+	 * Hashes the script at {@code script}, which is named {@code fileName} in the program.
+	 */
+	public Entry entry(Path script, String fileName) throws IOException {
+		MessageDigest digest = digest();
+		digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		// the script is never included into itself, so which file it is matters as much as its contents
+		digest.update(script.toRealPath().toString().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(hash(script));
+
+		return new Entry(dir.resolve(HexFormat.of().formatHex(digest.digest())));
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance(HASH);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("every JVM has " + HASH, e);
+		}
+	}
+
+	private static byte[] hash(Path file) throws IOException {
+		MessageDigest digest = digest();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * The format version, and when the classes of this compiler were last built.
+	 * Any rebuild invalidates every entry, even one that didn't change the format.
+	 */
+	private static String compilerVersion() {
+		long built = 0;
+		var codeSource = ProgramCache.class.getProtectionDomain().getCodeSource();
+		try {
+			if (codeSource != null) {
+				var source = Path.of(codeSource.getLocation().toURI());
+				try (Stream<Path> files = Files.walk(source)) {
+					built = files.mapToLong(file -> file.toFile().lastModified()).max().orElse(0);
+				}
+			}
+		} catch (IOException | URISyntaxException | FileSystemNotFoundException e) {
+			// no way of telling builds apart, so go by the format alone
+		}
+
+		return FORMAT_VERSION + "/" + built;
+	}
+}
@@ -0,0 +1,203 @@
+package me.minefreak19.tryp.cache;
+
+import me.minefreak19.tryp.lex.FileLocation;
+import me.minefreak19.tryp.lex.token.*;
+import me.minefreak19.tryp.tree.Expr;
+import me.minefreak19.tryp.tree.Stmt;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.minefreak19.tryp.cache.TreeWriter.*;
+
+/**
+ * Reads back a program written by {@link TreeWriter}.
+ * <p>
+ * Anything that doesn't look like what the writer writes is an {@link IOException},
+ * so that a damaged cache entry is only ever treated as a miss.
+ */
+final class TreeReader {
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+	private int line = 0;
+
+	TreeReader(DataInputStream in) {
+		this.in = in;
+	}
+
+	List<Stmt> readProgram() throws IOException {
+		try {
+			return readStmts();
+		} catch (ClassCastException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("malformed program", e);
+		}
+	}
+
+	int readInt() throws IOException {
+		int bits = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			bits |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (bits >>> 1) ^ -(bits & 1);
+			}
+		}
+
+		throw new IOException("malformed int");
+	}
+
+	String readString() throws IOException {
+		int index = readInt();
+		if (index != 0) return strings.get(index - 1);
+
+		String s = in.readUTF();
+		strings.add(s);
+		return s;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Token> T readToken() throws IOException {
+		var kind = TokenKind.fromOrdinal(readInt());
+		String fileName = readString();
+		line += readInt();
+		var loc = new FileLocation(fileName, line, readInt());
+		String text = readString();
+
+		return (T) switch (kind) {
+			case IDENTIFIER -> new IdentifierToken(loc, text);
+			case KEYWORD -> new KeywordToken(loc, text);
+			case OPERATOR -> new OpToken(loc, text);
+			case NUMBER -> new NumberToken(loc, text, in.readDouble());
+			case STRING -> new StringToken(loc, text, readString());
+			case EOF -> new EOFToken(loc);
+		};
+	}
+
+	private List<Token> readTokens() throws IOException {
+		int size = readInt();
+		var tokens = new ArrayList<Token>(size);
+		for (int i = 0; i < size; i++) tokens.add(readToken());
+		return tokens;
+	}
+
+	private int[] readInts() throws IOException {
+		int[] values = new int[readInt()];
+		for (int i = 0; i < values.length; i++) values[i] = readInt();
+		return values;
+	}
+
+	private List<Expr> readExprs() throws IOException {
+		int size = readInt();
+		var exprs = new ArrayList<Expr>(size);
+		for (int i = 0; i < size; i++) exprs.add(readExpr());
+		return exprs;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Stmt> List<T> readStmts() throws IOException {
+		int size = readInt();
+		var stmts = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++) stmts.add((T) readStmt());
+		return stmts;
+	}
+
+	private Expr readExpr() throws IOException {
+		int tag = readInt();
+		return switch (tag) {
+			case 0 -> null;
+			case ASSIGN -> {
+				var expr = new Expr.Assign(readToken(), readExpr());
+				expr.slot = readInt();
+				expr.upvalue = readInt();
+				yield expr;
+			}
+			case BINARY -> new Expr.Binary(readExpr(), readToken(), readExpr());
+			case CALL -> new Expr.Call(readExpr(), readToken(), readExprs());
+			case COMPOUND -> new Expr.Compound(readExprs());
+			case GET -> new Expr.Get(readExpr(), readToken());
+			case GROUPING -> new Expr.Grouping(readExpr());
+			case LAMBDA -> {
+				var expr = new Expr.Lambda(readToken(), readTokens(), readStmts());
+				expr.slots = readInt();
+				expr.captures = readInts();
+				yield expr;
+			}
+			case LITERAL -> new Expr.Literal(readLiteral());
+			case LOGICAL -> new Expr.Logical(readExpr(), readToken(), readExpr());
+			case SET -> new Expr.Set(readExpr(), readToken(), readExpr());
+			case SUPER -> {
+				var expr = new Expr.Super(readToken(), readToken());
+				expr.upvalue = readInt();
+				expr.thisSlot = readInt();
+				expr.thisUpvalue = readInt();
+				yield expr;
+			}
+			case TERNARY -> new Expr.Ternary(readExpr(), readExpr(), readExpr());
+			case THIS -> {
+				var expr = new Expr.This(readToken());
+				expr.slot = readInt();
+				expr.upvalue = readInt();
+				yield expr;
+			}
+			case UNARY -> new Expr.Unary(readToken(), readExpr());
+			case VARIABLE -> {
+				var expr = new Expr.Variable(readToken());
+				expr.slot = readInt();
+				expr.upvalue = readInt();
+				yield expr;
+			}
+			default -> throw new IOException("unknown expression tag " + tag);
+		};
+	}
+
+	private Object readLiteral() throws IOException {
+		int tag = readInt();
+		return switch (tag) {
+			case NIL -> null;
+			case TRUE -> true;
+			case FALSE -> false;
+			case NUMBER -> in.readDouble();
+			case STRING -> readString();
+			case INTEGER -> (double) readInt();
+			default -> throw new IOException("unknown literal tag " + tag);
+		};
+	}
+
+	private Stmt readStmt() throws IOException {
+		int tag = readInt();
+		return switch (tag) {
+			case 0 -> null;
+			case BLOCK -> {
+				var stmt = new Stmt.Block(readStmts());
+				stmt.first = readInt();
+				stmt.slots = readInt();
+				yield stmt;
+			}
+			case CLASS -> {
+				var stmt = new Stmt.Class(readToken(), (Expr.Variable) readExpr(), readStmts());
+				stmt.slot = readInt();
+				stmt.superSlot = readInt();
+				yield stmt;
+			}
+			case EXPRESSION -> new Stmt.Expression(readExpr());
+			case IF -> new Stmt.If(readExpr(), readStmt(), readStmt());
+			case PROC_DECL -> {
+				var stmt = new Stmt.ProcDecl(readToken(), readTokens(), readStmts(), readInt() != 0);
+				stmt.slot = readInt();
+				stmt.slots = readInt();
+				stmt.captures = readInts();
+				yield stmt;
+			}
+			case RETURN -> new Stmt.Return(readToken(), readExpr());
+			case VAR -> {
+				var stmt = new Stmt.Var(readToken(), readExpr());
+				stmt.slot = readInt();
+				yield stmt;
+			}
+			case WHILE -> new Stmt.While(readExpr(), readStmt());
+			default -> throw new IOException("unknown statement tag " + tag);
+		};
+	}
+}
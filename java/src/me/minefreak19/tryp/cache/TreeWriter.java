@@ -0,0 +1,401 @@
+package me.minefreak19.tryp.cache;
+
+import me.minefreak19.tryp.lex.FileLocation;
+import me.minefreak19.tryp.lex.token.*;
+import me.minefreak19.tryp.tree.Expr;
+import me.minefreak19.tryp.tree.Stmt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a resolved program in the binary form read back by {@link TreeReader}.
+ * <p>
+ * Every node is a tag byte followed by its fields, in the order they are declared in,
+ * then whatever the Resolver worked out about it.
+ * A tag of 0 stands for a missing node.
+ * Ints are written as variable-length zigzag numbers, since nearly all of them are small,
+ * and each string is written out in full only the first time, and by its index after that.
+ * The line of a token is written as how far it is from the line of the token before it.
+ * <p>
+ * Global indices, and the operand types and inline caches of the Interpreter, are not written,
+ * as they are only valid in the run that worked them out.
+ */
+final class TreeWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	// Expr tags, in Expr.Visitor order
+	static final int ASSIGN = 1;
+	static final int BINARY = 2;
+	static final int CALL = 3;
+	static final int COMPOUND = 4;
+	static final int GET = 5;
+	static final int GROUPING = 6;
+	static final int LAMBDA = 7;
+	static final int LITERAL = 8;
+	static final int LOGICAL = 9;
+	static final int SET = 10;
+	static final int SUPER = 11;
+	static final int TERNARY = 12;
+	static final int THIS = 13;
+	static final int UNARY = 14;
+	static final int VARIABLE = 15;
+
+	// Stmt tags, in Stmt.Visitor order
+	static final int BLOCK = 1;
+	static final int CLASS = 2;
+	static final int EXPRESSION = 3;
+	static final int IF = 4;
+	static final int PROC_DECL = 5;
+	static final int RETURN = 6;
+	static final int VAR = 7;
+	static final int WHILE = 8;
+
+	// Literal tags
+	static final int NIL = 0;
+	static final int TRUE = 1;
+	static final int FALSE = 2;
+	static final int NUMBER = 3;
+	static final int STRING = 4;
+	static final int INTEGER = 5;
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+	private int line = 0;
+
+	TreeWriter(DataOutputStream out) {
+		this.out = out;
+	}
+
+	void writeProgram(List<Stmt> program) throws IOException {
+		try {
+			writeStmts(program);
+		} catch (UncheckedIOException e) {
+			// the visitor methods can't throw IOException themselves
+			throw e.getCause();
+		}
+	}
+
+	void writeInt(int value) {
+		// zigzag, so that -1 is as short as 1
+		int bits = (value << 1) ^ (value >> 31);
+		try {
+			while ((bits & ~0x7F) != 0) {
+				out.writeByte((bits & 0x7F) | 0x80);
+				bits >>>= 7;
+			}
+			out.writeByte(bits);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void writeString(String s) {
+		Integer index = strings.get(s);
+		if (index != null) {
+			writeInt(index + 1);
+			return;
+		}
+
+		strings.put(s, strings.size());
+		writeInt(0);
+		try {
+			out.writeUTF(s);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeDouble(double value) {
+		try {
+			out.writeDouble(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeToken(Token token) {
+		writeInt(switch (token) {
+			case IdentifierToken ignored -> TokenKind.IDENTIFIER.ordinal();
+			case KeywordToken ignored -> TokenKind.KEYWORD.ordinal();
+			case OpToken ignored -> TokenKind.OPERATOR.ordinal();
+			case NumberToken ignored -> TokenKind.NUMBER.ordinal();
+			case StringToken ignored -> TokenKind.STRING.ordinal();
+			case EOFToken ignored -> TokenKind.EOF.ordinal();
+			default -> throw new AssertionError("unreachable");
+		});
+
+		FileLocation loc = token.getLoc();
+		writeString(loc.getName());
+		writeInt(loc.getLine() - line);
+		line = loc.getLine();
+		writeInt(loc.getCol());
+		writeString(token.getText());
+
+		if (token instanceof NumberToken number) writeDouble(number.getValue());
+		if (token instanceof StringToken string) writeString(string.getValue());
+	}
+
+	private void writeTokens(List<? extends Token> tokens) {
+		writeInt(tokens.size());
+		for (Token token : tokens) writeToken(token);
+	}
+
+	private void writeInts(int[] values) {
+		writeInt(values.length);
+		for (int value : values) writeInt(value);
+	}
+
+	private void writeExpr(Expr expr) {
+		if (expr == null) {
+			writeInt(0);
+		} else {
+			expr.accept(this);
+		}
+	}
+
+	private void writeExprs(List<Expr> exprs) {
+		writeInt(exprs.size());
+		for (Expr expr : exprs) writeExpr(expr);
+	}
+
+	private void writeStmt(Stmt stmt) {
+		if (stmt == null) {
+			writeInt(0);
+		} else {
+			stmt.accept(this);
+		}
+	}
+
+	private void writeStmts(List<? extends Stmt> stmts) {
+		writeInt(stmts.size());
+		for (Stmt stmt : stmts) writeStmt(stmt);
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		writeInt(ASSIGN);
+		writeToken(expr.name);
+		writeExpr(expr.value);
+		writeInt(expr.slot);
+		writeInt(expr.upvalue);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		writeInt(BINARY);
+		writeExpr(expr.left);
+		writeToken(expr.operator);
+		writeExpr(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		writeInt(CALL);
+		writeExpr(expr.callee);
+		writeToken(expr.paren);
+		writeExprs(expr.args);
+		return null;
+	}
+
+	@Override
+	public Void visitCompoundExpr(Expr.Compound expr) {
+		writeInt(COMPOUND);
+		writeExprs(expr.exprs);
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		writeInt(GET);
+		writeExpr(expr.object);
+		writeToken(expr.name);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		writeInt(GROUPING);
+		writeExpr(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLambdaExpr(Expr.Lambda expr) {
+		writeInt(LAMBDA);
+		writeToken(expr.lambda);
+		writeTokens(expr.params);
+		writeStmts(expr.body);
+		writeInt(expr.slots);
+		writeInts(expr.captures);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		writeInt(LITERAL);
+		switch (expr.value) {
+			case null -> writeInt(NIL);
+			case Boolean b -> writeInt(b ? TRUE : FALSE);
+			case Double d -> {
+				int i = d.intValue();
+				// -0.0 has to stay a double
+				if (i == d && (i != 0 || 1 / d > 0)) {
+					writeInt(INTEGER);
+					writeInt(i);
+				} else {
+					writeInt(NUMBER);
+					writeDouble(d);
+				}
+			}
+			case String s -> {
+				writeInt(STRING);
+				writeString(s);
+			}
+			default -> throw new AssertionError("unreachable");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		writeInt(LOGICAL);
+		writeExpr(expr.left);
+		writeToken(expr.operator);
+		writeExpr(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		writeInt(SET);
+		writeExpr(expr.object);
+		writeToken(expr.name);
+		writeExpr(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expr) {
+		writeInt(SUPER);
+		writeToken(expr.kw);
+		writeToken(expr.method);
+		writeInt(expr.upvalue);
+		writeInt(expr.thisSlot);
+		writeInt(expr.thisUpvalue);
+		return null;
+	}
+
+	@Override
+	public Void visitTernaryExpr(Expr.Ternary expr) {
+		writeInt(TERNARY);
+		writeExpr(expr.condition);
+		writeExpr(expr.thenExpr);
+		writeExpr(expr.elseExpr);
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expr) {
+		writeInt(THIS);
+		writeToken(expr.kw);
+		writeInt(expr.slot);
+		writeInt(expr.upvalue);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		writeInt(UNARY);
+		writeToken(expr.operator);
+		writeExpr(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		writeInt(VARIABLE);
+		writeToken(expr.name);
+		writeInt(expr.slot);
+		writeInt(expr.upvalue);
+		return null;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		writeInt(BLOCK);
+		writeStmts(stmt.statements);
+		writeInt(stmt.first);
+		writeInt(stmt.slots);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		writeInt(CLASS);
+		writeToken(stmt.name);
+		writeExpr(stmt.superclass);
+		writeStmts(stmt.methods);
+		writeInt(stmt.slot);
+		writeInt(stmt.superSlot);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		writeInt(EXPRESSION);
+		writeExpr(stmt.expr);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		writeInt(IF);
+		writeExpr(stmt.condition);
+		writeStmt(stmt.thenBranch);
+		writeStmt(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclStmt(Stmt.ProcDecl stmt) {
+		writeInt(PROC_DECL);
+		writeToken(stmt.name);
+		writeTokens(stmt.params);
+		writeStmts(stmt.body);
+		writeInt(stmt.isStatic ? 1 : 0);
+		writeInt(stmt.slot);
+		writeInt(stmt.slots);
+		writeInts(stmt.captures);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		writeInt(RETURN);
+		writeToken(stmt.kw);
+		writeExpr(stmt.value);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		writeInt(VAR);
+		writeToken(stmt.name);
+		writeExpr(stmt.initializer);
+		writeInt(stmt.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		writeInt(WHILE);
+		writeExpr(stmt.condition);
+		writeStmt(stmt.body);
+		return null;
+	}
+}
@@ -0,0 +1,15 @@
+package me.minefreak19.tryp.eval;
+
+/**
+ * A box for a local variable some proc, lambda or method captured,
+ * shared between the frame that declared it and every closure over it.
+ * <p>
+ * A local only gets one once something captures it, see {@link Environment#capture(int)}.
+ */
+final class Cell {
+	Object value;
+
+	Cell(Object value) {
+		this.value = value;
+	}
+}
@@ -0,0 +1,14 @@
+package me.minefreak19.tryp.eval;
+
+/**
+ * How a statement finished executing.
+ * <p>
+ * A statement that leaves its proc early completes with {@link #RETURN} instead of throwing,
+ * and every statement that executes others stops and passes that on as soon as one of them does,
+ * so that returning is an ordinary exit from each Java method on the way back up to the call.
+ * The value being returned waits in the {@link Interpreter} meanwhile.
+ */
+public enum Completion {
+	NORMAL,
+	RETURN,
+}
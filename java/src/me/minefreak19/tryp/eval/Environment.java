@@ -1,74 +1,126 @@
 package me.minefreak19.tryp.eval;
 
-import me.minefreak19.tryp.lex.token.Token;
-
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.Arrays;
+
+/**
+ * Runtime frame for one call of a proc, lambda or method,
+ * or for a block at the top level, which has no call to share a frame with.
+ * <p>
+ * Variables are addressed by the slot the Resolver gave them, so a frame
+ * costs a single small array instead of a map keyed by name.
+ * Globals don't live in an {@code Environment}; see {@link Interpreter}.
+ * <p>
+ * Frames aren't chained together, and nothing refers to one once its call is over.
+ * The variables of the frames around it a closure refers to are passed in as upvalues,
+ * the {@link Cell}s it captured when it was made.
+ * A local is only moved into a cell once something captures it, which is then in its slot instead,
+ * so only the variables that outlive their frame are ever on the heap,
+ * and the Interpreter can reuse the frame for the next call at the same depth, see {@link Interpreter#pushFrame}.
+ * <p>
+ * A number the Interpreter knows it has can be stored without boxing it,
+ * in a second array that is only made once the frame first holds one.
+ */
 public class Environment {
-	private final Environment parent;
-	private final Map<String, Object> values = new HashMap<>();
-
-	public Environment() {
-		this.parent = null;
-	}
+	static final Cell[] NO_UPVALUES = {};
+	private static final Object[] NO_VALUES = {};
+
+	/**
+	 * Stands in {@code values} for a number kept in {@code doubles}.
+	 */
+	private static final Object UNBOXED = new Object();
+
+	private Cell[] upvalues = NO_UPVALUES;
+	private Object[] values = NO_VALUES;
+	private double[] doubles = null;
+	// how many slots of values the current call uses
+	private int size = 0;
+
+	/**
+	 * Makes this the frame of a call that needs {@code size} slots, all empty,
+	 * for a proc that captured {@code upvalues}.
+	 */
+	void enter(Cell[] upvalues, int size) {
+		if (size > values.length) {
+			values = new Object[size];
+			doubles = null;
+		}
 
-	public Environment(Environment parent) {
-		this.parent = parent;
+		this.upvalues = upvalues;
+		this.size = size;
 	}
 
-	public void define(String name, Object value) {
-		// Maybe a redefinition check would be something to think about.
-		values.put(name, value);
+	/**
+	 * Ends the current call, clearing its slots so they don't keep anything alive.
+	 */
+	void exit() {
+		Arrays.fill(values, 0, size, null);
+		upvalues = NO_UPVALUES;
 	}
 
-	public Object get(Token name) {
-		if (values.containsKey(name.getText())) {
-			return values.get(name.getText());
-		}
-
-		if (this.parent != null) {
-			return this.parent.get(name);
-		}
+	public Object get(int slot) {
+		Object value = values[slot];
+		if (value == UNBOXED) return doubles[slot];
+		if (value instanceof Cell cell) return cell.value;
 
-		throw new RuntimeError(name, "Undefined variable `" + name.getText() + "`.");
+		return value;
 	}
 
-	public Object getAt(int depth, Token name) {
-		return this.ancestor(depth).get(name);
+	/**
+	 * @throws UnexpectedResultException If the variable doesn't hold a number.
+	 */
+	double getDouble(int slot) {
+		Object value = values[slot];
+		if (value == UNBOXED) return doubles[slot];
+		if (value instanceof Cell cell) value = cell.value;
+		if (value instanceof Double d) return d;
+
+		throw new UnexpectedResultException(value);
 	}
 
-	private Environment ancestor(int depth) {
-		var env = this;
-		for (int i = 0; i < depth; i++) {
-			if (env == null) {
-				throw new IllegalArgumentException("depth " + depth + " too high! max " + i);
-			}
-			env = env.parent;
+	/**
+	 * Sets the variable in {@code slot}, which declaring it does too,
+	 * since it is the one closures made by its initializer captured.
+	 */
+	public void assign(int slot, Object value) {
+		if (values[slot] instanceof Cell cell) {
+			cell.value = value;
+		} else {
+			values[slot] = value;
 		}
-
-		return env;
 	}
 
-	public void assign(Token name, Object value) {
-		if (values.containsKey(name.getText())) {
-			values.put(name.getText(), value);
+	void assignDouble(int slot, double value) {
+		if (values[slot] instanceof Cell cell) {
+			cell.value = value;
 			return;
 		}
 
-		if (this.parent != null) {
-			this.parent.assign(name, value);
-			return;
-		}
+		if (doubles == null) doubles = new double[values.length];
+		doubles[slot] = value;
+		values[slot] = UNBOXED;
+	}
 
-		throw new RuntimeError(name, "Undefined variable `" + name.getText() + "`.");
+	/**
+	 * Drops the variables in {@code count} slots from {@code first} on, once their scope is over,
+	 * so whatever is declared there next is a new variable, not one an earlier closure captured.
+	 */
+	void clear(int first, int count) {
+		Arrays.fill(values, first, first + count, null);
 	}
 
-	public void assignAt(int depth, Token name, Object value) {
-		this.ancestor(depth).values.put(name.getText(), value);
+	/**
+	 * @return The cell for the variable in {@code slot}, moving it into one if nothing captured it yet.
+	 */
+	Cell capture(int slot) {
+		Object value = values[slot];
+		if (value instanceof Cell cell) return cell;
+
+		var cell = new Cell(value == UNBOXED ? (Object) doubles[slot] : value);
+		values[slot] = cell;
+		return cell;
 	}
 
-	public Environment getParent() {
-		return parent;
+	Cell upvalue(int index) {
+		return upvalues[index];
 	}
 }
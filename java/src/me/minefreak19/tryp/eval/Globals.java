@@ -0,0 +1,62 @@
+package me.minefreak19.tryp.eval;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Global variables, interned by name into an indexed table,
+ * so that a reference only has to look its name up once.
+ * <p>
+ * The table outlives a single program, so REPL lines see
+ * (and may redefine) the globals of the lines before them.
+ */
+public final class Globals {
+	/**
+	 * Marks a global that has been referred to but not yet defined.
+	 * Distinct from {@code null}, which is Tryp's {@code nil}.
+	 */
+	public static final Object UNDEFINED = new Object();
+
+	private final Map<String, Integer> indices = new HashMap<>();
+	private String[] names = new String[64];
+	private Object[] values = new Object[64];
+	private int count = 0;
+
+	public Globals() {
+		Arrays.fill(values, UNDEFINED);
+	}
+
+	public int intern(String name) {
+		Integer index = indices.get(name);
+		if (index != null) return index;
+
+		if (count == values.length) {
+			names = Arrays.copyOf(names, count * 2);
+			values = Arrays.copyOf(values, count * 2);
+			Arrays.fill(values, count, values.length, UNDEFINED);
+		}
+
+		names[count] = name;
+		indices.put(name, count);
+		return count++;
+	}
+
+	public void define(String name, Object value) {
+		// intern() may replace the array, so it has to run before values is read
+		int index = intern(name);
+		values[index] = value;
+	}
+
+	public String name(int index) {
+		return names[index];
+	}
+
+	/**
+	 * The array is replaced when the table grows, so it is only safe to
+	 * hold on to while no new names are interned.
+	 */
+	public Object[] values() {
+		return values;
+	}
+}
@@ -1,27 +1,28 @@
 package me.minefreak19.tryp.eval;
 
-import me.minefreak19.tryp.Tryp;
 import me.minefreak19.tryp.lex.token.IdentifierToken;
-import me.minefreak19.tryp.lex.token.KeywordToken;
 import me.minefreak19.tryp.lex.token.OpToken;
 import me.minefreak19.tryp.lex.token.Token;
 import me.minefreak19.tryp.tree.Expr;
 import me.minefreak19.tryp.tree.Stmt;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 
 public class Interpreter
 		implements Expr.Visitor<Object>,
-				           Stmt.Visitor<Void> {
-	private final Environment globals = new Environment();
-	private Environment environment = globals;
+				           Stmt.Visitor<Completion> {
+	private final Globals globals = new Globals();
+	// the frames of the calls being run, and the ones deeper calls had before,
+	//  which are reused by the next call at the same depth
+	private Environment[] frames = new Environment[16];
+	private int depth = 0;
+	// null at the top level, where every variable is a global.
+	private Environment environment = null;
+	// what the return statement that completed with RETURN gave, until the call it returns from takes it
+	private Object returnValue = null;
 
-	private final Scanner scIn = new Scanner(System.in);
-
-	private final Map<Expr, Integer> localVarDepths = new HashMap<>();
 
 	public static boolean isTruthy(Object o) {
 		return switch (o) {
@@ -38,12 +39,10 @@ public class Interpreter
 		return a.equals(b);
 	}
 
-	public static void checkNumber(OpToken opTok, Object... objs) {
-		for (var obj : objs) {
-			if (!(obj instanceof Double)) {
-				throw new RuntimeError(opTok,
-						"Operand for " + opTok.getText() + " must be a number");
-			}
+	public static void checkNumber(OpToken opTok, Object left, Object right) {
+		if (!(left instanceof Double) || !(right instanceof Double)) {
+			throw new RuntimeError(opTok,
+					"Operand for " + opTok.getText() + " must be a number");
 		}
 	}
 
@@ -82,100 +81,7 @@ public class Interpreter
 	}
 
 	{
-		defineNatives();
-	}
-
-	private void defineNatives() {
-		globals.define("println", new TrypCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				System.out.println(Interpreter.toString(args.get(0)));
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native>";
-			}
-		});
-
-		globals.define("print", new TrypCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				System.out.print(Interpreter.toString(args.get(0)));
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native>";
-			}
-		});
-
-		globals.define("clock", new TrypCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				return (double) System.currentTimeMillis();
-			}
-
-			@Override
-			public String toString() {
-				return "<native>";
-			}
-		});
-
-		globals.define("prettyPrint", new TrypCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				Object value = args.get(0);
-				String str = switch (value) {
-					// format with commas, trim trailing zeroes (and decimal point)
-					case Double d -> String.format("%,f", d).replaceAll("\\.?0+$", "");
-					case String s -> s;
-
-					default -> stringify(value);
-				};
-				System.out.print(str);
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native>";
-			}
-		});
-
-		globals.define("readLine", new TrypCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				return scIn.nextLine();
-			}
-		});
+		Natives.define(globals::define);
 	}
 
 	public void interpret(List<Stmt> program) {
@@ -185,63 +91,289 @@ public class Interpreter
 			}
 		} catch (RuntimeError err) {
 			System.err.println(err.getLocalizedMessage());
-			Tryp.hadError = true;
 		}
 	}
 
-	public void execute(Stmt stmt) {
-		stmt.accept(this);
+	public Completion execute(Stmt stmt) {
+		return stmt.accept(this);
 	}
 
-	public void executeBlock(List<Stmt> statements, Environment environment) {
-		Environment previous = this.environment;
-		try {
-			this.environment = environment;
-
-			for (var stmt : statements) {
-				execute(stmt);
-			}
-		} finally {
-			this.environment = previous;
+	/**
+	 * Executes {@code statements} in order in the current frame, stopping at the first that doesn't complete normally.
+	 *
+	 * @return How the last statement executed completed.
+	 */
+	public Completion executeBlock(List<Stmt> statements) {
+		for (var stmt : statements) {
+			Completion completion = execute(stmt);
+			if (completion != Completion.NORMAL) return completion;
 		}
+
+		return Completion.NORMAL;
+	}
+
+	/**
+	 * Starts the frame of a call that needs {@code size} slots, for a proc that captured {@code upvalues}.
+	 * Every push has to be followed by a {@link #popFrame()}, however the call ends.
+	 *
+	 * @return The new frame, which is now the current one.
+	 */
+	Environment pushFrame(Cell[] upvalues, int size) {
+		if (depth == frames.length) frames = Arrays.copyOf(frames, depth * 2);
+
+		Environment frame = frames[depth];
+		if (frame == null) frame = frames[depth] = new Environment();
+		frame.enter(upvalues, size);
+
+		depth++;
+		environment = frame;
+		return frame;
+	}
+
+	void popFrame() {
+		environment.exit();
+		depth--;
+		environment = depth > 0 ? frames[depth - 1] : null;
+	}
+
+	/**
+	 * @return The value of the return statement that last completed with {@link Completion#RETURN},
+	 * which isn't kept any longer.
+	 */
+	Object takeReturnValue() {
+		Object value = returnValue;
+		returnValue = null;
+		return value;
 	}
 
 	public Object evaluate(Expr expr) {
 		return expr.accept(this);
 	}
 
-	public void resolve(Expr expr, int depth) {
-		localVarDepths.put(expr, depth);
+	private Object lookupGlobal(Token name, int index) {
+		Object value = globals.values()[index];
+		if (value == Globals.UNDEFINED) {
+			throw new RuntimeError(name, "Undefined variable `" + name.getText() + "`.");
+		}
+
+		return value;
 	}
 
-	private Object lookupVar(Token name, Expr expr) {
-		Integer depth = localVarDepths.get(expr);
-		if (depth == null) {
-			return globals.get(name);
+	/**
+	 * Defines a variable declared at {@code slot} of the current frame,
+	 * or a global if the Resolver gave it no slot.
+	 */
+	private void define(int slot, Token name, Object value) {
+		if (slot < 0) {
+			globals.define(name.getText(), value);
+		} else {
+			environment.assign(slot, value);
+		}
+	}
+
+	/**
+	 * @return The cells a proc, lambda or method made here captures, see Resolver.capture().
+	 */
+	private Cell[] capture(int[] captures) {
+		if (captures.length == 0) return Environment.NO_UPVALUES;
+
+		var cells = new Cell[captures.length];
+		for (int i = 0; i < captures.length; i++) {
+			int from = captures[i];
+			cells[i] = from >= 0 ? environment.capture(from) : environment.upvalue(-1 - from);
 		}
 
-		return environment.getAt(depth, name);
+		return cells;
 	}
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign assign) {
 		Object value = evaluate(assign.value);
 
-		Integer depth = localVarDepths.get(assign);
-		if (depth != null) {
-			environment.assignAt(depth, assign.name, assign.value);
-		} else {
-			environment.assign(assign.name, value);
+		if (assign.slot >= 0) {
+			environment.assign(assign.slot, value);
+			return value;
+		}
+		if (assign.upvalue >= 0) {
+			environment.upvalue(assign.upvalue).value = value;
+			return value;
+		}
+
+		if (assign.global < 0) assign.global = globals.intern(assign.name.getText());
+		Object[] values = globals.values();
+		if (values[assign.global] == Globals.UNDEFINED) {
+			throw new RuntimeError(assign.name, "Undefined variable `" + assign.name.getText() + "`.");
 		}
+		values[assign.global] = value;
 
 		return value;
 	}
 
+	/**
+	 * A {@link Expr.Binary} starts out having seen no operands,
+	 * then specializes to the first types it sees, and goes generic for good once those change.
+	 */
+	private static final byte UNINITIALIZED = 0;
+	/** Both operands have always been numbers. */
+	private static final byte NUMBERS = 1;
+	/** Both operands have always been strings. */
+	private static final byte STRINGS = 2;
+	private static final byte GENERIC = 3;
+
 	@Override
 	public Object visitBinaryExpr(Expr.Binary binary) {
+		if (binary.operands == NUMBERS) {
+			try {
+				return isArithmetic(binary) ? (Object) arithmetic(binary) : (Object) compare(binary);
+			} catch (UnexpectedResultException e) {
+				return e.result;
+			}
+		}
+
 		Object left = evaluate(binary.left);
 		Object right = evaluate(binary.right);
 
+		switch (binary.operands) {
+		case STRINGS -> {
+			if (left instanceof String strLeft && right instanceof String strRight) {
+				return binaryStrings(binary, strLeft, strRight);
+			}
+		}
+		case GENERIC -> {
+			return binaryGeneric(binary, left, right);
+		}
+		}
+
+		return specialize(binary, left, right);
+	}
+
+	/**
+	 * Records the types of {@code left} and {@code right} in {@code binary}, then applies it to them.
+	 */
+	private Object specialize(Expr.Binary binary, Object left, Object right) {
+		byte seen;
+		if (left instanceof Double && right instanceof Double) seen = NUMBERS;
+		else if (left instanceof String && right instanceof String) seen = STRINGS;
+		else seen = GENERIC;
+
+		binary.operands = binary.operands == UNINITIALIZED ? seen : GENERIC;
+		return binaryGeneric(binary, left, right);
+	}
+
+	private static boolean isArithmetic(Expr.Binary binary) {
+		return switch (binary.operator.getValue()) {
+			case PLUS, MINUS, STAR, SLASH, PERCENT -> true;
+			default -> false;
+		};
+	}
+
+	/**
+	 * @return Whether {@code expr} has always been a number, as far as the Interpreter can tell.
+	 */
+	private static boolean isNumeric(Expr expr) {
+		return expr instanceof Expr.Binary binary && binary.operands == NUMBERS && isArithmetic(binary);
+	}
+
+	/**
+	 * Evaluates an expression that should be a number, without boxing it.
+	 *
+	 * @throws UnexpectedResultException If it isn't a number, with the value it was instead.
+	 */
+	double evaluateDouble(Expr expr) {
+		if (isNumeric(expr)) {
+			return arithmetic((Expr.Binary) expr);
+		}
+		if (expr instanceof Expr.Variable variable && variable.slot >= 0) {
+			return environment.getDouble(variable.slot);
+		}
+
+		return expectDouble(evaluate(expr));
+	}
+
+	private static double expectDouble(Object value) {
+		if (value instanceof Double d) return d;
+
+		throw new UnexpectedResultException(value);
+	}
+
+	/**
+	 * Applies an arithmetic {@link #NUMBERS} binary without boxing its operands or its result.
+	 * If an operand isn't a number after all, the binary goes generic.
+	 *
+	 * @throws UnexpectedResultException If the generic binary didn't give a number.
+	 */
+	private double arithmetic(Expr.Binary binary) {
+		double left;
+		try {
+			left = evaluateDouble(binary.left);
+		} catch (UnexpectedResultException e) {
+			return expectDouble(despecialize(binary, e.result, evaluate(binary.right)));
+		}
+
+		double right;
+		try {
+			right = evaluateDouble(binary.right);
+		} catch (UnexpectedResultException e) {
+			return expectDouble(despecialize(binary, left, e.result));
+		}
+
+		return switch (binary.operator.getValue()) {
+			case PLUS -> left + right;
+			case MINUS -> left - right;
+			case STAR -> left * right;
+			case SLASH -> left / right;
+			case PERCENT -> left % right;
+			default -> throw new AssertionError("unreachable");
+		};
+	}
+
+	/**
+	 * Same as {@link #arithmetic(Expr.Binary)}, for comparisons,
+	 * which always give a boolean (or fail) even when generic.
+	 */
+	private boolean compare(Expr.Binary binary) {
+		double left;
+		try {
+			left = evaluateDouble(binary.left);
+		} catch (UnexpectedResultException e) {
+			return (boolean) despecialize(binary, e.result, evaluate(binary.right));
+		}
+
+		double right;
+		try {
+			right = evaluateDouble(binary.right);
+		} catch (UnexpectedResultException e) {
+			return (boolean) despecialize(binary, left, e.result);
+		}
+
+		return switch (binary.operator.getValue()) {
+			// Double.compare() is 0 exactly when Double.equals() is true, which is what areEqual() uses
+			case BANG_EQUAL -> Double.compare(left, right) != 0;
+			case EQUAL_EQUAL -> Double.compare(left, right) == 0;
+			case GREATER_THAN -> left > right;
+			case LESS_THAN -> left < right;
+			case GREATER_EQUAL -> left >= right;
+			case LESS_EQUAL -> left <= right;
+			default -> throw new AssertionError("unreachable");
+		};
+	}
+
+	private Object despecialize(Expr.Binary binary, Object left, Object right) {
+		binary.operands = GENERIC;
+		return binaryGeneric(binary, left, right);
+	}
+
+	private Object binaryStrings(Expr.Binary binary, String left, String right) {
+		return switch (binary.operator.getValue()) {
+			case BANG_EQUAL -> !left.equals(right);
+			case EQUAL_EQUAL -> left.equals(right);
+			case PLUS -> left + right;
+			// fails like the generic version does
+			default -> binaryGeneric(binary, left, right);
+		};
+	}
+
+	private Object binaryGeneric(Expr.Binary binary, Object left, Object right) {
 		return switch (binary.operator.getValue()) {
 
 			case BANG_EQUAL -> !areEqual(left, right);
@@ -312,21 +444,128 @@ public class Interpreter
 
 	@Override
 	public Object visitCallExpr(Expr.Call expr) {
-		Object callee = evaluate(expr.callee);
-		var args = expr.args.stream()
-				.map(this::evaluate)
-				.toList();
-
-		if (callee instanceof TrypCallable f) {
-			if (args.size() != f.arity()) {
-				throw new RuntimeError(expr.paren,
-						"Incorrect number of arguments. (Expected = " + f.arity() + ", actual = "
-								+ args.size() + ")");
+		// A method that is called straight away is invoked on its receiver, without being bound first.
+		if (expr.callee instanceof Expr.Get get) {
+			Object object = evaluate(get.object);
+			if (object instanceof TrypInstance instance) {
+				TrypProc method = propertyCache(get).method(instance, get.name);
+				if (method != null) return invoke(expr, method, instance);
 			}
-			return f.call(this, args);
-		} else {
+
+			return call(expr, getProperty(get, object));
+		}
+
+		if (expr.callee instanceof Expr.Super superExpr) {
+			return invoke(expr, superMethod(superExpr), superReceiver(superExpr));
+		}
+
+		return call(expr, evaluate(expr.callee));
+	}
+
+	// Up to four arguments are passed to the entry point of a callable for that many, without an array.
+	// The arguments are always evaluated before anything about the callee is checked.
+
+	private Object call(Expr.Call expr, Object callee) {
+		List<Expr> args = expr.args;
+		return switch (args.size()) {
+			case 0 -> callable(expr, callee, 0).call0(this);
+			case 1 -> {
+				Object a = evaluate(args.get(0));
+				yield callable(expr, callee, 1).call1(this, a);
+			}
+			case 2 -> {
+				Object a = evaluate(args.get(0));
+				Object b = evaluate(args.get(1));
+				yield callable(expr, callee, 2).call2(this, a, b);
+			}
+			case 3 -> {
+				Object a = evaluate(args.get(0));
+				Object b = evaluate(args.get(1));
+				Object c = evaluate(args.get(2));
+				yield callable(expr, callee, 3).call3(this, a, b, c);
+			}
+			case 4 -> {
+				Object a = evaluate(args.get(0));
+				Object b = evaluate(args.get(1));
+				Object c = evaluate(args.get(2));
+				Object d = evaluate(args.get(3));
+				yield callable(expr, callee, 4).call4(this, a, b, c, d);
+			}
+			default -> {
+				Object[] values = evaluateArgs(expr, 0);
+				yield callable(expr, callee, values.length).call(this, values);
+			}
+		};
+	}
+
+	/**
+	 * @return {@code callee}, if it can be called with {@code argc} arguments.
+	 */
+	private static TrypCallable callable(Expr.Call expr, Object callee, int argc) {
+		if (!(callee instanceof TrypCallable f)) {
 			throw new RuntimeError(expr.paren, "Can't call non-callable expression");
 		}
+
+		checkArity(expr, f.arity(), argc);
+		return f;
+	}
+
+	/**
+	 * Calls {@code method} with {@code self} as its receiver, which goes ahead of the arguments, see {@link TrypProc}.
+	 */
+	private Object invoke(Expr.Call expr, TrypProc method, TrypInstance self) {
+		List<Expr> args = expr.args;
+		int arity = method.arity();
+		switch (args.size()) {
+		case 0 -> {
+			checkArity(expr, arity, 0);
+			return method.call1(this, self);
+		}
+		case 1 -> {
+			Object a = evaluate(args.get(0));
+			checkArity(expr, arity, 1);
+			return method.call2(this, self, a);
+		}
+		case 2 -> {
+			Object a = evaluate(args.get(0));
+			Object b = evaluate(args.get(1));
+			checkArity(expr, arity, 2);
+			return method.call3(this, self, a, b);
+		}
+		case 3 -> {
+			Object a = evaluate(args.get(0));
+			Object b = evaluate(args.get(1));
+			Object c = evaluate(args.get(2));
+			checkArity(expr, arity, 3);
+			return method.call4(this, self, a, b, c);
+		}
+		default -> {
+			Object[] values = evaluateArgs(expr, 1);
+			checkArity(expr, arity, values.length - 1);
+			values[0] = self;
+			return method.call(this, values);
+		}
+		}
+	}
+
+	/**
+	 * @return The values of the arguments of {@code expr}, after {@code offset} empty slots.
+	 */
+	private Object[] evaluateArgs(Expr.Call expr, int offset) {
+		var values = new Object[offset + expr.args.size()];
+		for (int i = 0; i < expr.args.size(); i++) {
+			values[offset + i] = evaluate(expr.args.get(i));
+		}
+
+		return values;
+	}
+
+	private static void checkArity(Expr.Call expr, int arity, int args) {
+		if (args != arity) {
+			throw new RuntimeError(expr.paren,
+					"Incorrect number of arguments. (Expected = " + arity + ", actual = "
+							+ args + ")");
+		}
 	}
 
 	@Override
@@ -340,14 +579,22 @@ public class Interpreter
 
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
-		Object object = evaluate(expr.object);
+		return getProperty(expr, evaluate(expr.object));
+	}
+
+	private Object getProperty(Expr.Get expr, Object object) {
 		if (object instanceof TrypInstance instance) {
-			return instance.get(expr.name);
+			return propertyCache(expr).get(instance, expr.name);
 		}
 
 		throw new RuntimeError(expr.name, "Trying to access property of non-instance");
 	}
 
+	private static PropertyCache propertyCache(Expr.Get expr) {
+		if (expr.cache == null) expr.cache = new PropertyCache();
+		return (PropertyCache) expr.cache;
+	}
+
 	@Override
 	public Object visitGroupingExpr(Expr.Grouping grouping) {
 		return evaluate(grouping.expression);
@@ -355,14 +602,18 @@ public class Interpreter
 
 	@Override
 	public Object visitLambdaExpr(Expr.Lambda expr) {
-		var decl = new Stmt.ProcDecl(
-				new IdentifierToken(expr.lambda.getLoc(), "<lambda fn>"),
-				expr.params,
-				expr.body,
-				false
-		);
+		if (expr.proc == null) {
+			expr.proc = new Stmt.ProcDecl(
+					new IdentifierToken(expr.lambda.getLoc(), "<lambda fn>"),
+					expr.params,
+					expr.body,
+					false
+			);
+			expr.proc.slots = expr.slots;
+			expr.proc.captures = expr.captures;
+		}
 
-		return new TrypProc(decl, this.environment);
+		return new TrypProc(expr.proc, capture(expr.captures));
 	}
 
 	@Override
@@ -391,18 +642,19 @@ public class Interpreter
 		}
 
 		Object value = evaluate(expr.value);
-		instance.set(expr.name, value);
+		if (expr.cache == null) expr.cache = new PropertyCache();
+		((PropertyCache) expr.cache).set(instance, expr.name, value);
 		return value;
 	}
 
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
-		// safe cast, because type of superclass is checked at class declaration
-		int distance = localVarDepths.get(expr);
-		TrypClass superclass = (TrypClass) environment.getAt(distance, expr.kw);
-		TrypInstance self = (TrypInstance) environment.getAt(distance - 1,
-				new KeywordToken(null, "this"));
+		return new TrypBoundMethod(superReceiver(expr), superMethod(expr));
+	}
 
+	private TrypProc superMethod(Expr.Super expr) {
+		// safe cast, because type of superclass is checked at class declaration
+		TrypClass superclass = (TrypClass) environment.upvalue(expr.upvalue).value;
 		TrypProc method = superclass.findMethod(expr.method.getText());
 
 		if (method == null) {
@@ -410,7 +662,11 @@ public class Interpreter
 					"Undefined property `" + expr.method.getText() + "` of superclass.");
 		}
 
-		return method.bind(self);
+		return method;
+	}
+
+	private TrypInstance superReceiver(Expr.Super expr) {
+		return (TrypInstance) local(expr.thisSlot, expr.thisUpvalue);
 	}
 
 	@Override
@@ -422,7 +678,11 @@ public class Interpreter
 
 	@Override
 	public Object visitThisExpr(Expr.This expr) {
-		return lookupVar(expr.kw, expr);
+		return local(expr.slot, expr.upvalue);
+	}
+
+	private Object local(int slot, int upvalue) {
+		return slot >= 0 ? environment.get(slot) : environment.upvalue(upvalue).value;
 	}
 
 	@Override
@@ -440,17 +700,32 @@ public class Interpreter
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable variable) {
-		return lookupVar(variable.name, variable);
+		if (variable.slot >= 0) return environment.get(variable.slot);
+		if (variable.upvalue >= 0) return environment.upvalue(variable.upvalue).value;
+
+		if (variable.global < 0) variable.global = globals.intern(variable.name.getText());
+		return lookupGlobal(variable.name, variable.global);
 	}
 
 	@Override
-	public Void visitBlockStmt(Stmt.Block block) {
-		executeBlock(block.statements, new Environment(environment));
-		return null;
+	public Completion visitBlockStmt(Stmt.Block block) {
+		// only a block at the top level has a frame of its own, see Resolver.visitBlockStmt()
+		if (environment == null && block.slots > 0) {
+			pushFrame(Environment.NO_UPVALUES, block.slots);
+			try {
+				return executeBlock(block.statements);
+			} finally {
+				popFrame();
+			}
+		}
+
+		Completion completion = executeBlock(block.statements);
+		if (block.slots > 0) environment.clear(block.first, block.slots);
+		return completion;
 	}
 
 	@Override
-	public Void visitClassStmt(Stmt.Class stmt) {
+	public Completion visitClassStmt(Stmt.Class stmt) {
 		Object superclass = null;
 		if (stmt.superclass != null) {
 			superclass = evaluate(stmt.superclass);
@@ -460,79 +735,109 @@ public class Interpreter
 			}
 		}
 
-		environment.define(stmt.name.getText(), null);
+		define(stmt.slot, stmt.name, null);
 
-		if (stmt.superclass != null) {
-			// create a separate environment within the class to hold `super`
-			environment = new Environment(environment);
-			environment.define("super", superclass);
-		}
+		// at the top level, `super` gets a frame of its own
+		boolean superFrame = stmt.superclass != null && environment == null;
+		if (superFrame) pushFrame(Environment.NO_UPVALUES, 1);
+		if (stmt.superclass != null) environment.assign(stmt.superSlot, superclass);
 
 		var methods = new HashMap<String, TrypProc>();
+		var staticMethods = new HashMap<String, TrypProc>();
 		for (var method : stmt.methods) {
-			methods.put(method.name.getText(), new TrypProc(method, environment));
+			var proc = new TrypProc(method, capture(method.captures));
+			(method.isStatic ? staticMethods : methods).put(method.name.getText(), proc);
 		}
 
-		var klass = new TrypClass(stmt.name.getText(), (TrypClass) superclass, methods);
+		var klass = new TrypClass(stmt.name.getText(), (TrypClass) superclass, methods, staticMethods);
 
-		if (superclass != null) {
-			// we created a separate environment within the class to hold `super`
-			environment = environment.getParent();
-		}
+		// the methods have captured `super`, so its slot can go to the next variable
+		if (superFrame) popFrame();
+		else if (stmt.superclass != null) environment.clear(stmt.superSlot, 1);
 
-		environment.assign(stmt.name, klass);
-		return null;
+		define(stmt.slot, stmt.name, klass);
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitExpressionStmt(Stmt.Expression expression) {
+	public Completion visitExpressionStmt(Stmt.Expression expression) {
+		// nothing uses the value, so a number can go into a local without being boxed
+		if (expression.expr instanceof Expr.Assign assign && assign.slot >= 0 && isNumeric(assign.value)) {
+			double value;
+			try {
+				value = evaluateDouble(assign.value);
+			} catch (UnexpectedResultException e) {
+				environment.assign(assign.slot, e.result);
+				return Completion.NORMAL;
+			}
+
+			environment.assignDouble(assign.slot, value);
+			return Completion.NORMAL;
+		}
+
 		evaluate(expression.expr);
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitIfStmt(Stmt.If ifStmt) {
+	public Completion visitIfStmt(Stmt.If ifStmt) {
 		if (isTruthy(evaluate(ifStmt.condition))) {
-			execute(ifStmt.thenBranch);
+			return execute(ifStmt.thenBranch);
 		} else if (ifStmt.elseBranch != null) {
-			execute(ifStmt.elseBranch);
+			return execute(ifStmt.elseBranch);
 		}
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitProcDeclStmt(Stmt.ProcDecl stmt) {
-		environment.define(stmt.name.getText(), new TrypProc(stmt, this.environment, stmt.isStatic));
+	public Completion visitProcDeclStmt(Stmt.ProcDecl stmt) {
+		define(stmt.slot, stmt.name, new TrypProc(stmt, capture(stmt.captures), stmt.isStatic));
 
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
+	public Completion visitReturnStmt(Stmt.Return stmt) {
 		Object value = null;
 		if (stmt.value != null) value = evaluate(stmt.value);
 
-		throw new Return(value);
+		returnValue = value;
+		return Completion.RETURN;
 	}
 
 	@Override
-	public Void visitVarStmt(Stmt.Var var) {
+	public Completion visitVarStmt(Stmt.Var var) {
+		if (var.slot >= 0 && var.initializer != null && isNumeric(var.initializer)) {
+			double value;
+			try {
+				value = evaluateDouble(var.initializer);
+			} catch (UnexpectedResultException e) {
+				environment.assign(var.slot, e.result);
+				return Completion.NORMAL;
+			}
+
+			environment.assignDouble(var.slot, value);
+			return Completion.NORMAL;
+		}
+
 		Object value = null;
 		if (var.initializer != null) {
 			value = evaluate(var.initializer);
 		}
 
-		environment.define(var.name.getText(), value);
-		return null;
+		define(var.slot, var.name, value);
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
+	public Completion visitWhileStmt(Stmt.While stmt) {
 		// isTruthy() converts stuff like `1` -> `true`
 		// so that the while only checks a boolean
-		while (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.body);
+		// The Optimizer drops conditions that are always true.
+		while (stmt.condition == null || isTruthy(evaluate(stmt.condition))) {
+			Completion completion = execute(stmt.body);
+			if (completion != Completion.NORMAL) return completion;
 		}
-		return null;
+		return Completion.NORMAL;
 	}
 }
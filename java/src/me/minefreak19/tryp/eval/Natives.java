@@ -0,0 +1,114 @@
+package me.minefreak19.tryp.eval;
+
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+
+/**
+ * Built-in procs shared by every execution engine.
+ * <p>
+ * Natives never touch the {@link Interpreter} they are called with,
+ * so engines other than the tree-walker may pass {@code null}.
+ */
+public final class Natives {
+	private static final Scanner scIn = new Scanner(System.in);
+
+	private Natives() {
+	}
+
+	public static void define(BiConsumer<String, TrypCallable> globals) {
+		globals.accept("println", new TrypCallable() {
+			@Override
+			public int arity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, Object[] args) {
+				System.out.println(Interpreter.toString(args[0]));
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<native>";
+			}
+		});
+
+		globals.accept("print", new TrypCallable() {
+			@Override
+			public int arity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, Object[] args) {
+				System.out.print(Interpreter.toString(args[0]));
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<native>";
+			}
+		});
+
+		globals.accept("clock", new TrypCallable() {
+			@Override
+			public int arity() {
+				return 0;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, Object[] args) {
+				return (double) System.currentTimeMillis();
+			}
+
+			@Override
+			public String toString() {
+				return "<native>";
+			}
+		});
+
+		globals.accept("prettyPrint", new TrypCallable() {
+			@Override
+			public int arity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, Object[] args) {
+				String str = switch (args[0]) {
+					// format with commas, trim trailing zeroes (and decimal point)
+					case Double d -> String.format("%,f", d).replaceAll("\\.?0+$", "");
+					case String s -> s;
+
+					default -> Interpreter.stringify(args[0]);
+				};
+				System.out.print(str);
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<native>";
+			}
+		});
+
+		globals.accept("readLine", new TrypCallable() {
+			@Override
+			public int arity() {
+				return 0;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, Object[] args) {
+				return scIn.nextLine();
+			}
+
+			@Override
+			public String toString() {
+				return "<native>";
+			}
+		});
+	}
+}
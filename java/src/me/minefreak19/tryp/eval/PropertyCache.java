@@ -0,0 +1,91 @@
+package me.minefreak19.tryp.eval;
+
+import me.minefreak19.tryp.lex.token.Token;
+
+import java.util.Arrays;
+
+/**
+ * An inline cache for one property access in the program,
+ * remembering where the property was for the last few shapes of instance seen there.
+ * <p>
+ * Every class has its own root shape, so an instance's shape also tells what class it is,
+ * and is all a cached access needs to check.
+ * A site that has seen more than {@link #LIMIT} shapes is megamorphic,
+ * and looks up any other shape in full every time.
+ */
+final class PropertyCache {
+	private static final int LIMIT = 4;
+	private static final Entry[] EMPTY = {};
+
+	/**
+	 * @param index  The slot of the field, or -1 if the property is a method.
+	 * @param method For a get, the method the property is, if it isn't a field.
+	 * @param next   For a set, the shape of the instance afterwards.
+	 */
+	private record Entry(Shape shape, int index, TrypProc method, Shape next) {
+	}
+
+	private Entry[] entries = EMPTY;
+
+	Object get(TrypInstance instance, Token name) {
+		Entry entry = lookup(instance, name);
+		if (entry == null) return instance.get(name);
+
+		return entry.method == null ? instance.values[entry.index] : new TrypBoundMethod(instance, entry.method);
+	}
+
+	/**
+	 * @return The method the property is, to be invoked on {@code instance} directly,
+	 * or null if it is a field or isn't there.
+	 */
+	TrypProc method(TrypInstance instance, Token name) {
+		Entry entry = lookup(instance, name);
+		if (entry != null) return entry.method;
+		if (entries.length < LIMIT) return null;
+
+		// megamorphic
+		return instance.shape.indexOf(name.getText()) < 0 ? instance.klass.findMethod(name.getText()) : null;
+	}
+
+	/**
+	 * @return Where the property is for the shape of {@code instance},
+	 * or null if it isn't there or the site is megamorphic and hasn't cached the shape.
+	 */
+	private Entry lookup(TrypInstance instance, Token name) {
+		Shape shape = instance.shape;
+		for (Entry entry : entries) {
+			if (entry.shape == shape) return entry;
+		}
+
+		if (entries.length == LIMIT) return null;
+
+		int index = shape.indexOf(name.getText());
+		if (index >= 0) return add(new Entry(shape, index, null, null));
+
+		TrypProc method = instance.klass.findMethod(name.getText());
+		if (method == null) return null;
+
+		return add(new Entry(shape, -1, method, null));
+	}
+
+	void set(TrypInstance instance, Token name, Object value) {
+		Shape shape = instance.shape;
+		for (Entry entry : entries) {
+			if (entry.shape == shape) {
+				instance.setAt(entry.index, entry.next, value);
+				return;
+			}
+		}
+
+		instance.set(name, value);
+		if (entries.length < LIMIT) {
+			add(new Entry(shape, instance.shape.indexOf(name.getText()), null, instance.shape));
+		}
+	}
+
+	private Entry add(Entry entry) {
+		entries = Arrays.copyOf(entries, entries.length + 1);
+		entries[entries.length - 1] = entry;
+		return entry;
+	}
+}
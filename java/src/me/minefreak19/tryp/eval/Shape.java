@@ -0,0 +1,76 @@
+package me.minefreak19.tryp.eval;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The layout of an instance's fields: which slot of its values each one is in.
+ * <p>
+ * Every class starts its instances off at its own root shape, and setting a new field
+ * moves an instance along to the shape with that field added at the end.
+ * Those transitions are remembered, so instances of a class that set the same fields
+ * in the same order all end up sharing one shape, and a field is always in the same slot
+ * for every instance of a given shape.
+ * <p>
+ * A shape never changes once made, apart from the transitions it remembers.
+ * The {@link me.minefreak19.tryp.vm.VirtualMachine} lays out its instances with shapes too.
+ */
+public final class Shape {
+	private final Shape root;
+	private final String[] names;
+	private Map<String, Shape> transitions = null;
+	// only kept up to date on the root
+	private int largest = 0;
+
+	private Shape(Shape root, String[] names) {
+		this.root = root == null ? this : root;
+		this.names = names;
+	}
+
+	/**
+	 * @return A new shape with no fields.
+	 */
+	public static Shape root() {
+		return new Shape(null, new String[0]);
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return How many fields the largest shape reached from this one's root so far has,
+	 * which is how much room a new instance is likely to need.
+	 */
+	public int expectedSize() {
+		return root.largest;
+	}
+
+	/**
+	 * @return The slot of the field {@code name}, or -1 if shapes like this one don't have it.
+	 */
+	public int indexOf(String name) {
+		// instances seldom have more than a handful of fields, so this beats hashing
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return The shape of an instance of this shape once it sets the new field {@code name},
+	 * which goes in slot {@link #size()}.
+	 */
+	public Shape with(String name) {
+		if (transitions == null) transitions = new HashMap<>();
+
+		return transitions.computeIfAbsent(name, n -> {
+			var added = Arrays.copyOf(names, names.length + 1);
+			added[names.length] = n;
+			root.largest = Math.max(root.largest, added.length);
+			return new Shape(root, added);
+		});
+	}
+}
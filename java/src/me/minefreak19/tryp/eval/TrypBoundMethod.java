@@ -0,0 +1,72 @@
+package me.minefreak19.tryp.eval;
+
+/**
+ * A method that was accessed as a value, e.g. {@code var m = obj.method;}.
+ * <p>
+ * Direct calls like {@code obj.method()} never create one of these,
+ * see {@link Interpreter#visitCallExpr(me.minefreak19.tryp.tree.Expr.Call)}.
+ */
+public record TrypBoundMethod(TrypInstance receiver, TrypProc method) implements TrypCallable {
+	@Override
+	public int arity() {
+		return method.arity();
+	}
+
+	// the receiver goes ahead of the arguments, see TrypProc
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return method.call1(interpreter, receiver);
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		return method.call2(interpreter, receiver, a);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		return method.call3(interpreter, receiver, a, b);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return method.call4(interpreter, receiver, a, b, c);
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return method.call(interpreter, new Object[]{receiver, a, b, c, d});
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] args) {
+		return method.call(interpreter, withReceiver(receiver, args));
+	}
+
+	/**
+	 * @return {@code args}, with {@code receiver} ahead of them.
+	 */
+	static Object[] withReceiver(TrypInstance receiver, Object[] args) {
+		var values = new Object[args.length + 1];
+		values[0] = receiver;
+		System.arraycopy(args, 0, values, 1, args.length);
+		return values;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		// every access binds anew
+		return this == obj;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		return method.toString();
+	}
+}
@@ -1,9 +1,36 @@
 package me.minefreak19.tryp.eval;
 
-import java.util.List;
-
+/**
+ * Something that can be called, which callers check gets {@link #arity()} arguments first.
+ * <p>
+ * Every callable takes its arguments as an array in {@link #call(Interpreter, Object[])}.
+ * There is also an entry point for each number of arguments up to four,
+ * which callables on hot paths override so that the usual calls don't need an array.
+ */
 public interface TrypCallable {
+	Object[] NO_ARGS = {};
+
 	int arity();
 
-	Object call(Interpreter interpreter, List<Object> args);
+	Object call(Interpreter interpreter, Object[] args);
+
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, NO_ARGS);
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, new Object[]{a});
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, new Object[]{a, b});
+	}
+
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, new Object[]{a, b, c});
+	}
+
+	default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		return call(interpreter, new Object[]{a, b, c, d});
+	}
 }
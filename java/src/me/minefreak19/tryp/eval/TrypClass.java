@@ -1,52 +1,47 @@
 package me.minefreak19.tryp.eval;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * A class, which is also the only instance of a metaclass holding its static methods.
+ * <p>
+ * Each class has a flat table of every method its instances have, including inherited ones,
+ * built once when the class is defined, so looking up a method costs the same however deep the hierarchy is.
+ * The metaclass's table has the static methods on top of the instance methods of the superclass.
+ */
 public final class TrypClass extends TrypInstance implements TrypCallable {
+	public static final String CONSTRUCTOR = "$init";
+
 	private final String name;
 	private final Map<String, TrypProc> methods;
-	private final TrypClass superclass;
-
-	public TrypClass(String name, TrypClass superclass, Map<String, TrypProc> methods) {
-		{
-			String mName = "$static$" + name;
-			var mMethods = new HashMap<String, TrypProc>();
-			for (var entry : methods.entrySet()) {
-				if (entry.getValue().isStatic()) {
-					methods.remove(entry.getKey());
-					mMethods.put(entry.getKey(), entry.getValue());
-				}
-			}
-
-			this.klass = new TrypClass(mName, superclass, mMethods, 0);
-		}
-
-		this.name = name;
-		this.superclass = superclass;
-		this.methods = methods;
+	private final TrypProc constructor;
+	private final Shape instanceShape = Shape.root();
+
+	/**
+	 * @param methods       The instance methods declared in the class itself.
+	 * @param staticMethods The static methods declared in the class itself.
+	 */
+	public TrypClass(String name, TrypClass superclass,
+	                 Map<String, TrypProc> methods, Map<String, TrypProc> staticMethods) {
+		this(name, superclass, methods);
+		this.klass = new TrypClass("$static$" + name, superclass, staticMethods);
 	}
 
 	// Avoids the metaclass logic of the public constructor.
-	@SuppressWarnings("unused")
-	private TrypClass(String name, TrypClass superclass, Map<String, TrypProc> methods, int dummy) {
+	private TrypClass(String name, TrypClass superclass, Map<String, TrypProc> methods) {
 		this.name = name;
-		this.superclass = superclass;
-		this.methods = methods;
+
+		var table = new HashMap<String, TrypProc>();
+		if (superclass != null) table.putAll(superclass.methods);
+		table.putAll(methods);
+		this.methods = Map.copyOf(table);
+		this.constructor = this.methods.get(CONSTRUCTOR);
 	}
 
 	public TrypProc findMethod(String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name);
-		}
-
-		if (superclass != null) {
-			return superclass.findMethod(name);
-		}
-
-		return null;
+		return methods.get(name);
 	}
 
 	@Override
@@ -56,7 +51,6 @@ public final class TrypClass extends TrypInstance implements TrypCallable {
 
 	@Override
 	public int arity() {
-		TrypProc constructor = findMethod("$init");
 		if (constructor != null) {
 			return constructor.arity();
 		}
@@ -64,15 +58,47 @@ public final class TrypClass extends TrypInstance implements TrypCallable {
 		return 0;
 	}
 
+	// the constructor is called with the new instance ahead of the arguments, see TrypProc
+
 	@Override
-	public Object call(Interpreter interpreter, List<Object> args) {
+	public Object call0(Interpreter interpreter) {
 		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call1(interpreter, instance);
+		return instance;
+	}
 
-		TrypProc constructor = findMethod("$init");
-		if (constructor != null) {
-			constructor.bind(instance).call(interpreter, args);
-		}
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call2(interpreter, instance, a);
+		return instance;
+	}
 
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call3(interpreter, instance, a, b);
+		return instance;
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call4(interpreter, instance, a, b, c);
+		return instance;
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call(interpreter, new Object[]{instance, a, b, c, d});
+		return instance;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] args) {
+		var instance = new TrypInstance(this);
+		if (constructor != null) constructor.call(interpreter, TrypBoundMethod.withReceiver(instance, args));
 		return instance;
 	}
 
@@ -80,6 +106,16 @@ public final class TrypClass extends TrypInstance implements TrypCallable {
 		return name;
 	}
 
+	/**
+	 * @return The shape every instance of this class starts with.
+	 */
+	Shape instanceShape() {
+		return instanceShape;
+	}
+
+	/**
+	 * @return Every method of this class, including inherited ones.
+	 */
 	public Map<String, TrypProc> methods() {
 		return methods;
 	}
@@ -2,34 +2,66 @@ package me.minefreak19.tryp.eval;
 
 import me.minefreak19.tryp.lex.token.Token;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * An object with fields.
+ * <p>
+ * The fields are kept in a plain array, laid out by the instance's {@link Shape},
+ * which is shared with the other instances of its class that have the same fields.
+ */
 public class TrypInstance {
+	private static final Object[] NO_VALUES = {};
+
 	protected TrypClass klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	Shape shape;
+	Object[] values;
 
+	/**
+	 * For classes, which are the only instance of their metaclass, so get a root shape of their own.
+	 */
 	protected TrypInstance() {
-		this(null);
+		this.shape = Shape.root();
+		this.values = NO_VALUES;
 	}
 
 	public TrypInstance(TrypClass klass) {
 		this.klass = klass;
+		this.shape = klass.instanceShape();
+
+		int expected = shape.expectedSize();
+		this.values = expected == 0 ? NO_VALUES : new Object[expected];
 	}
 
 	public Object get(Token name) {
-		if (fields.containsKey(name.getText())) {
-			return fields.get(name.getText());
-		}
+		int index = shape.indexOf(name.getText());
+		if (index >= 0) return values[index];
 
 		TrypProc method = klass.findMethod(name.getText());
-		if (method != null) return method.bind(this);
+		if (method != null) return new TrypBoundMethod(this, method);
 
 		throw new RuntimeError(name, "Undefined property `" + name.getText() + "`");
 	}
 
 	public void set(Token name, Object value) {
-		fields.put(name.getText(), value);
+		int index = shape.indexOf(name.getText());
+		if (index >= 0) {
+			values[index] = value;
+		} else {
+			setAt(shape.size(), shape.with(name.getText()), value);
+		}
+	}
+
+	/**
+	 * Sets the field in slot {@code index}, after which the instance has the shape {@code next}.
+	 */
+	void setAt(int index, Shape next, Object value) {
+		if (index >= values.length) {
+			values = Arrays.copyOf(values, Math.max(next.expectedSize(), index + 1));
+		}
+
+		shape = next;
+		values[index] = value;
 	}
 
 	@Override
@@ -1,46 +1,91 @@
 package me.minefreak19.tryp.eval;
 
-import me.minefreak19.tryp.lex.token.IdentifierToken;
 import me.minefreak19.tryp.tree.Stmt;
 
-import java.util.List;
+/**
+ * A proc, lambda or method.
+ * <p>
+ * The arguments go straight into the first slots of the frame, in order.
+ * A method has its receiver in slot 0, ahead of the parameters, so it is called with the receiver
+ * as an extra first argument, which {@link #arity()} doesn't count,
+ * and nothing needs to be bound to call one.
+ *
+ * @param upvalues The variables of the frames around the declaration that it refers to,
+ *                 in the order of {@code declaration.captures}.
+ */
+public record TrypProc(Stmt.ProcDecl declaration, Cell[] upvalues, boolean isStatic) implements TrypCallable {
+	public TrypProc(Stmt.ProcDecl declaration, Cell[] upvalues) {
+		this(declaration, upvalues, declaration.isStatic);
+	}
 
-public record TrypProc(Stmt.ProcDecl declaration, Environment closure, boolean isStatic) implements TrypCallable {
-	public TrypProc(Stmt.ProcDecl declaration, Environment closure) {
-		this(declaration, closure, declaration.isStatic);
+	@Override
+	public int arity() {
+		return declaration.params.size();
 	}
 
-	public TrypProc bind(TrypInstance instance) {
-		var env = new Environment(closure);
-		env.define("this", instance);
-		return new TrypProc(declaration, env, this.isStatic);
+	@Override
+	public Object call0(Interpreter interpreter) {
+		interpreter.pushFrame(upvalues, declaration.slots);
+		return run(interpreter);
 	}
 
 	@Override
-	public int arity() {
-		return declaration.params.size();
+	public Object call1(Interpreter interpreter, Object a) {
+		var env = interpreter.pushFrame(upvalues, declaration.slots);
+		env.assign(0, a);
+		return run(interpreter);
 	}
 
 	@Override
-	public Object call(Interpreter interpreter, List<Object> args) {
-		// We're assuming the closure always leads back through some path to the global scope.
-		boolean isConstructor = declaration.name.getText().equals("$init");
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		var env = interpreter.pushFrame(upvalues, declaration.slots);
+		env.assign(0, a);
+		env.assign(1, b);
+		return run(interpreter);
+	}
 
-		var env = new Environment(closure);
-		for (int i = 0; i < args.size(); i++) {
-			env.define(declaration.params.get(i).getText(), args.get(i));
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		var env = interpreter.pushFrame(upvalues, declaration.slots);
+		env.assign(0, a);
+		env.assign(1, b);
+		env.assign(2, c);
+		return run(interpreter);
+	}
+
+	@Override
+	public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+		var env = interpreter.pushFrame(upvalues, declaration.slots);
+		env.assign(0, a);
+		env.assign(1, b);
+		env.assign(2, c);
+		env.assign(3, d);
+		return run(interpreter);
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] args) {
+		var env = interpreter.pushFrame(upvalues, declaration.slots);
+		for (int i = 0; i < args.length; i++) {
+			env.assign(i, args[i]);
 		}
+
+		return run(interpreter);
+	}
+
+	/**
+	 * Runs the body in the frame just pushed for it, which is popped however the body completes.
+	 */
+	private Object run(Interpreter interpreter) {
 		try {
-			interpreter.executeBlock(declaration.body, env);
-		} catch (Return ret) {
-			// return instance itself from constructor
-			if (isConstructor) return closure.getAt(0, new IdentifierToken(null, "this"));
+			if (interpreter.executeBlock(declaration.body) == Completion.RETURN) {
+				return interpreter.takeReturnValue();
+			}
 
-			return ret.value;
+			return null;
+		} finally {
+			interpreter.popFrame();
 		}
-		if (isConstructor) return closure.getAt(0, new IdentifierToken(null, "this"));
-
-		return null;
 	}
 
 	@Override
@@ -0,0 +1,18 @@
+package me.minefreak19.tryp.eval;
+
+/**
+ * Not indicative of an error.
+ * <p>
+ * Thrown by {@link Interpreter#evaluateDouble(me.minefreak19.tryp.tree.Expr)}
+ * when an expression that has always been a number turns out not to be one,
+ * so that whoever asked for a double can fall back to using the value as it is.
+ */
+@SuppressWarnings("serial")
+class UnexpectedResultException extends RuntimeException {
+	final Object result;
+
+	UnexpectedResultException(Object result) {
+		super(null, null, false, false);
+		this.result = result;
+	}
+}
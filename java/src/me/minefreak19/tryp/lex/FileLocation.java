@@ -1,69 +1,49 @@
 package me.minefreak19.tryp.lex;
 
-import java.io.File;
-
+/**
+ * A position in a source file.
+ * <p>
+ * Positions of tokens are kept as an offset into their file,
+ * and only turned into a line and column by the file's {@link LineMap} when they are read.
+ */
 public class FileLocation {
-	private String name;
+	private final String name;
+	private final LineMap lines;
+	private final int offset;
+	// 0 until worked out from the offset
 	private int line;
 	private int col;
 
-	public static FileLocation from(File file) {
-		return new FileLocation(file.getName(), 1, 1);
-	}
-
-	public FileLocation(FileLocation loc) {
-		this(loc.name, loc.line, loc.col);
-	}
-
 	public FileLocation(String name, int line, int col) {
 		this.name = name;
+		this.lines = null;
+		this.offset = -1;
 		this.line = line;
 		this.col = col;
 	}
 
-	public String getName() {
-		return name;
+	FileLocation(LineMap lines, int offset) {
+		this.name = lines.fileName();
+		this.lines = lines;
+		this.offset = offset;
 	}
 
-	public void setName(String name) {
-		this.name = name;
+	public String getName() {
+		return name;
 	}
 
 	public int getLine() {
+		if (line == 0) line = lines.line(offset);
 		return line;
 	}
 
-	public void setLine(int line) {
-		this.line = line;
-	}
-
 	public int getCol() {
+		if (col == 0) col = lines.col(offset);
 		return col;
 	}
 
-	public void setCol(int col) {
-		this.col = col;
-	}
-
-	public void advanceLine(int lines) {
-		this.col = 1;
-		this.line += lines;
-	}
-
-	public void advanceLine() {
-		this.advanceLine(1);
-	}
-
-	public void advanceCol(int cols) {
-		this.col += cols;
-	}
-
-	public void advanceCol() {
-		this.advanceCol(1);
-	}
-
 	@Override
 	public String toString() {
-		return this.name + ':' + this.line + ':' + this.col;
+		return this.name + ':' + this.getLine() + ':' + this.getCol();
 	}
 }
@@ -1,21 +1,25 @@
 package me.minefreak19.tryp.lex;
 
-import me.minefreak19.tryp.SyntaxException;
 import me.minefreak19.tryp.lex.token.*;
 import me.minefreak19.tryp.util.CompilerError;
-
-import java.util.LinkedList;
-import java.util.List;
+import me.minefreak19.tryp.util.Diagnostics;
 
 import static java.lang.Character.isDigit;
 
+/**
+ * Splits source text into tokens.
+ * <p>
+ * The lexer walks a cursor over the source and never copies what is left of it.
+ * Tokens go straight into a {@link TokenBuffer}; only names and string values are copied out.
+ * Lexing is driven by the buffer, which asks for each token as its reader gets to it.
+ */
+@SuppressWarnings("ThrowableNotThrown")
 public class Lexer {
-	private String source;
-	private final FileLocation loc;
-
-	public FileLocation getLoc() {
-		return loc;
-	}
+	private final CharSequence source;
+	private int pos = 0;
+	private final LineMap lines;
+	private final TokenBuffer tokens;
+	private final Diagnostics diagnostics;
 
 	public static boolean isIdentifier(char ch) {
 		return 'a' <= ch && ch <= 'z'
@@ -31,66 +35,85 @@ public class Lexer {
 				       || ch == '_';
 	}
 
-	public Lexer(String source, FileLocation loc) {
+	public Lexer(CharSequence source, String fileName, Diagnostics diagnostics) {
 		this.source = source;
-		this.loc = loc;
+		this.diagnostics = diagnostics;
+		this.lines = new LineMap(fileName, source);
+		this.tokens = new TokenBuffer(this, source, lines);
 	}
 
-	private void trimWhitespace() {
-		int i;
-		for (i = 0; i < source.length(); i++) {
-			char ch = source.charAt(i);
+	private boolean atEnd() {
+		return pos >= source.length();
+	}
 
-			if (ch == '\n') {
-				loc.advanceLine();
-				continue;
-			}
+	private boolean startsWith(String prefix) {
+		return regionEquals(pos, pos + prefix.length(), prefix);
+	}
 
-			if (!Character.isWhitespace(ch)) break;
+	private boolean regionEquals(int start, int end, String text) {
+		if (end - start != text.length() || end > source.length()) return false;
 
-			loc.advanceCol();
+		for (int i = 0; i < text.length(); i++) {
+			if (source.charAt(start + i) != text.charAt(i)) return false;
 		}
 
-		this.source = source.substring(i);
+		return true;
 	}
 
-	private Token finish(Token token) {
-		// for string literals and the like
-		String[] lines = token.getText().split("\n");
-		if (lines.length > 1) {
-			loc.advanceLine(lines.length - 1);
-		}
+	private char charAt(int i) {
+		return i < source.length() ? source.charAt(i) : '\0';
+	}
 
-		loc.advanceCol(lines[lines.length - 1].length());
+	private void trimWhitespace() {
+		int i;
+		for (i = pos; i < source.length(); i++) {
+			if (!Character.isWhitespace(source.charAt(i))) break;
+		}
 
-		return token;
+		pos = i;
 	}
 
 	private void skipLineComment() {
-		if (!this.source.startsWith("//")) {
+		if (!startsWith("//")) {
 			throw new IllegalStateException("skipLineComment() called but no single line comment");
 		}
 
-		this.source = this.source.split("\n", 2)[1];
-		loc.advanceLine();
+		int i = pos;
+		while (i < source.length() && source.charAt(i) != '\n') i++;
+
+		// the newline, if there is one, is left for trimWhitespace()
+		pos = i;
 	}
 
 	private void skipMultilineComment() {
-		if (!this.source.startsWith("/*")) {
+		if (!startsWith("/*")) {
 			throw new IllegalStateException("skipMultilineComment() called but no multiline comment");
 		}
 
-		String[] parts = this.source.split("\\*/", 2);
-		loc.advanceLine((int) parts[0].lines().count() - 1);
+		int start = pos;
+		int i = pos + 2;
+		while (i < source.length()
+				       && !(source.charAt(i) == '*' && i + 1 < source.length() && source.charAt(i + 1) == '/')) {
+			i++;
+		}
+
+		if (i >= source.length()) {
+			pos = source.length();
+			new CompilerError()
+					.error(lines.at(start), "Unclosed multiline comment")
+					.report(diagnostics);
+			return;
+		}
 
-		this.source = parts[1];
+		pos = i + 2;
 	}
 
-	private Token lexNum() {
+	private void lexNum() {
+		int start = pos;
 		StringBuilder sb = new StringBuilder();
 		int i;
-		for (i = 0; i < source.length(); i++) {
-			char ch = this.source.charAt(i);
+		for (i = pos; i < source.length(); i++) {
+			char ch = source.charAt(i);
 
 			if (!isNum(ch)) break;
 
@@ -99,55 +122,113 @@ public class Lexer {
 			}
 		}
 
-		this.source = this.source.substring(i);
+		pos = i;
 
 		var tokText = sb.toString();
 		try {
-			return finish(new NumberToken(this.loc, tokText));
+			int value = tokens.intern(Double.parseDouble(tokText));
+			tokens.add(TokenKind.NUMBER, start, pos - start, value);
 		} catch (NumberFormatException e) {
 			// this probably shouldn't happen normally because of the !isNum checks
 			//  still, it could happen if the number somehow can't be represented
 			//  in a double.
 			throw new CompilerError()
-					.error(this.loc, "Invalid number: `" + tokText + "`")
-					.report();
+					.error(lines.at(start), "Invalid number: `" + tokText + "`")
+					.report(diagnostics);
 		}
 	}
 
-	private Token lexWord() {
-		var sb = new StringBuilder();
-
+	private void lexWord() {
 		int i;
-		for (i = 0; i < this.source.length(); i++) {
-			char ch = this.source.charAt(i);
+		for (i = pos; i < source.length(); i++) {
+			if (!isIdentifier(source.charAt(i))) break;
+		}
 
-			if (!isIdentifier(ch)) break;
+		int start = pos;
+		pos = i;
 
-			sb.append(ch);
+		Keyword kw = keyword(start, i);
+		if (kw != null) {
+			tokens.add(TokenKind.KEYWORD, start, i - start, kw.ordinal());
+		} else {
+			var tokText = source.subSequence(start, i).toString();
+			tokens.add(TokenKind.IDENTIFIER, start, i - start, tokens.intern(tokText));
 		}
+	}
 
-		this.source = this.source.substring(i);
+	/**
+	 * Picks the only keyword that could be spelled by the word from {@code start} to {@code end},
+	 * by its first letter and length, then checks that it is.
+	 *
+	 * @return The keyword, or null if the word is an identifier.
+	 */
+	private Keyword keyword(int start, int end) {
+		int length = end - start;
+		Keyword kw = switch (source.charAt(start)) {
+			case 'c' -> Keyword.CLASS;
+			case 'e' -> length == 4 ? Keyword.ELSE : Keyword.EXTENDS;
+			case 'f' -> length == 3 ? Keyword.FOR : Keyword.FALSE;
+			case 'i' -> length == 2 ? Keyword.IF : Keyword.INCLUDE;
+			case 'n' -> Keyword.NIL;
+			case 'p' -> Keyword.PROC;
+			case 'r' -> Keyword.RETURN;
+			case 's' -> length == 5 ? Keyword.SUPER : Keyword.STATIC;
+			case 't' -> charAt(start + 1) == 'h' ? Keyword.THIS : Keyword.TRUE;
+			case 'v' -> Keyword.VAR;
+			case 'w' -> Keyword.WHILE;
+			default -> null;
+		};
+
+		return kw != null && regionEquals(start, end, kw.toString()) ? kw : null;
+	}
 
-		var tokText = sb.toString();
-		try {
-			return finish(new KeywordToken(this.loc, tokText));
-		} catch (IllegalArgumentException ignored) {
-			return finish(new IdentifierToken(this.loc, tokText));
-		}
+	/**
+	 * Finds the longest operator at the cursor, by its first character and the one after.
+	 *
+	 * @return The operator, or null if there isn't one.
+	 */
+	private Operator operator() {
+		char next = charAt(pos + 1);
+		return switch (source.charAt(pos)) {
+			case '-' -> next == '>' ? Operator.RIGHT_ARROW : next == '=' ? Operator.MINUS_EQUALS : Operator.MINUS;
+			case '>' -> next == '=' ? Operator.GREATER_EQUAL : Operator.GREATER_THAN;
+			case '<' -> next == '=' ? Operator.LESS_EQUAL : Operator.LESS_THAN;
+			case '=' -> next == '=' ? Operator.EQUAL_EQUAL : Operator.EQUAL;
+			case '!' -> next == '=' ? Operator.BANG_EQUAL : Operator.BANG;
+			case '&' -> next == '&' ? Operator.AND_AND : null;
+			case '|' -> next == '|' ? Operator.OR_OR : null;
+			case '+' -> next == '=' ? Operator.PLUS_EQUALS : Operator.PLUS;
+			case '*' -> next == '=' ? Operator.STAR_EQUALS : Operator.STAR;
+			case '/' -> next == '=' ? Operator.SLASH_EQUALS : Operator.SLASH;
+			case '%' -> next == '=' ? Operator.PERCENT_EQUALS : Operator.PERCENT;
+			case '{' -> Operator.OPEN_CURLY;
+			case '}' -> Operator.CLOSE_CURLY;
+			case '(' -> Operator.OPEN_PAREN;
+			case ')' -> Operator.CLOSE_PAREN;
+			case ';' -> Operator.SEMICOLON;
+			case ',' -> Operator.COMMA;
+			case '\\' -> Operator.BACKSLASH;
+			case '.' -> Operator.DOT;
+			case '?' -> Operator.QUESTION;
+			case ':' -> Operator.COLON;
+			default -> null;
+		};
 	}
 
-	private Token lexString() {
-		if (source.charAt(0) != '"') {
+	private void lexString() {
+		if (source.charAt(pos) != '"') {
 			throw new IllegalStateException("lexString() called without a String to lex");
 		}
 
+		int start = pos;
 		var sbStr = new StringBuilder();
 
 		boolean escape = false;
+		boolean closed = false;
 		int i;
 		loop:
-		for (i = 1 /* skip initial quote */; i < this.source.length(); i++) {
-			char ch = this.source.charAt(i);
+		for (i = pos + 1 /* skip initial quote */; i < source.length(); i++) {
+			char ch = source.charAt(i);
 
 			if (escape) {
 				escape = false;
@@ -157,17 +238,22 @@ public class Lexer {
 					case 't' -> '\t';
 					case '"' -> '"';
 					case '\\' -> '\\';
-					default -> throw new CompilerError()
-							.error(this.loc, "Invalid escape sequence `\\" + ch + "`")
-							.report();
+					default -> {
+						// keep lexing the rest of the string, so the cursor still moves past it
+						new CompilerError()
+								.error(lines.at(start), "Invalid escape sequence `\\" + ch + "`")
+								.report(diagnostics);
+						yield ch;
+					}
 				});
 			} else {
 				switch (ch) {
 				case '"' -> {
 					// increment it, because we're breaking the loop
 					//  this ensures that the ending quote is included in
-					//  the string literal and not left in `this.source`
+					//  the string literal
 					i++;
+					closed = true;
 					break loop;
 				}
 				case '\\' -> escape = true;
@@ -177,59 +263,75 @@ public class Lexer {
 		}
 
 		String str = sbStr.toString();
-		String text = this.source.substring(0, i);
-		this.source = this.source.substring(i);
-		if (i == 1 || !text.endsWith("\"")) {
-			throw new SyntaxException(this.loc,
-					String.format("`%s` (%s)", text, str) + " " +
-							"unclosed string literal");
+		pos = i;
+		if (!closed) {
+			String text = source.subSequence(start, i).toString();
+			throw new CompilerError()
+					.error(lines.at(start),
+							String.format("`%s` (%s)", text, str) + " " +
+									"unclosed string literal")
+					.report(diagnostics);
 		}
 
-		return finish(new StringToken(this.loc, text, str));
+		tokens.add(TokenKind.STRING, start, i - start, tokens.intern(str));
 	}
 
-	// TODO: expose this interface. it's probably simpler for the parsing
-	private Token nextToken() {
+	/**
+	 * Lexes the next token into {@link #tokens()}, skipping any whitespace and comments before it.
+	 * Once the source runs out, every call adds an EOF token.
+	 */
+	public void nextToken() {
+		int count = tokens.count();
+		while (tokens.count() == count) {
+			lexOne();
+		}
+	}
+
+	/**
+	 * Lexes one token, or skips one run of whitespace or one comment.
+	 */
+	private void lexOne() {
 		trimWhitespace();
-		if (this.source.isEmpty()) return null;
+		if (atEnd()) {
+			tokens.add(TokenKind.EOF, pos, 0, 0);
+			return;
+		}
 
-		if (this.source.startsWith("//")) {
+		if (startsWith("//")) {
 			skipLineComment();
-			return nextToken();
+			return;
 		}
-		if (this.source.startsWith("/*")) {
+		if (startsWith("/*")) {
 			skipMultilineComment();
-			return nextToken();
+			return;
 		}
 
-		for (var op : Operator.values()) {
-			if (source.startsWith(op.text)) {
-				this.source = this.source.substring(op.text.length());
-				return finish(new OpToken(this.loc, op.text, op));
-			}
+		Operator op = operator();
+		if (op != null) {
+			tokens.add(TokenKind.OPERATOR, pos, op.text.length(), op.ordinal());
+			pos += op.text.length();
+			return;
 		}
 
-		char ch = this.source.charAt(0);
+		char ch = source.charAt(pos);
 		if (isDigit(ch))
-			return lexNum();
+			lexNum();
 		else if (ch == '"')
-			return lexString();
-		else
-			return lexWord();
-	}
-
-	public List<Token> tokens() {
-		var ret = new LinkedList<Token>();
-		while (!this.source.isEmpty()) {
-//            System.out.println(this.source);
-			var token = nextToken();
-			if (token != null) {
-				ret.add(token);
-			}
+			lexString();
+		else if (isIdentifier(ch))
+			lexWord();
+		else {
+			new CompilerError()
+					.error(lines.at(pos), "Unexpected character `" + ch + "`")
+					.report(diagnostics);
+			pos++;
 		}
+	}
 
-		ret.add(new EOFToken(this.loc));
-
-		return ret;
+	/**
+	 * @return The buffer this lexer feeds. Nothing has been lexed until it is read from.
+	 */
+	public TokenBuffer tokens() {
+		return tokens;
 	}
 }
@@ -0,0 +1,60 @@
+package me.minefreak19.tryp.lex;
+
+import java.util.Arrays;
+
+/**
+ * Maps offsets in one source file to lines and columns.
+ * <p>
+ * The table of line starts is only built the first time a position is asked for,
+ * which normally means when an error gets reported.
+ */
+public final class LineMap {
+	private final String fileName;
+	private final CharSequence source;
+	private int[] lineStarts = null;
+
+	public LineMap(String fileName, CharSequence source) {
+		this.fileName = fileName;
+		this.source = source;
+	}
+
+	public String fileName() {
+		return fileName;
+	}
+
+	public FileLocation at(int offset) {
+		return new FileLocation(this, offset);
+	}
+
+	/**
+	 * @return The 1-based line {@code offset} is on.
+	 */
+	public int line(int offset) {
+		int index = Arrays.binarySearch(lineStarts(), offset);
+		// not a line start => (-(insertion point) - 1), and the line is the one before the insertion point
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/**
+	 * @return The 1-based column of {@code offset} in its line.
+	 */
+	public int col(int offset) {
+		return offset - lineStarts()[line(offset) - 1] + 1;
+	}
+
+	private int[] lineStarts() {
+		if (lineStarts != null) return lineStarts;
+
+		int[] starts = new int[64];
+		int count = 0;
+		starts[count++] = 0;
+		for (int i = 0; i < source.length(); i++) {
+			if (source.charAt(i) != '\n') continue;
+
+			if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+			starts[count++] = i + 1;
+		}
+
+		return lineStarts = Arrays.copyOf(starts, count);
+	}
+}
@@ -0,0 +1,79 @@
+package me.minefreak19.tryp.lex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source text read straight out of a memory-mapped file.
+ * <p>
+ * Most scripts are plain ASCII, where every byte is one {@code char},
+ * so the lexer can read the mapped bytes directly without the file ever being decoded onto the heap.
+ * Only the text of tokens is copied out, by {@link #subSequence(int, int)}.
+ */
+public final class MappedSource implements CharSequence {
+	/**
+	 * Smaller files are just read into a String, which is cheaper than setting up a mapping.
+	 */
+	private static final long MAP_THRESHOLD = 64 * 1024;
+
+	private final ByteBuffer bytes;
+
+	private MappedSource(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Reads the UTF-8 source at {@code path}, mapping it into memory if it is big and ASCII.
+	 */
+	public static CharSequence read(Path path) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < MAP_THRESHOLD || size > Integer.MAX_VALUE) {
+				return Files.readString(path);
+			}
+
+			var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (isAscii(bytes)) {
+				return new MappedSource(bytes);
+			}
+
+			// throws on malformed input, like Files.readString() does
+			return StandardCharsets.UTF_8.newDecoder().decode(bytes);
+		}
+	}
+
+	private static boolean isAscii(ByteBuffer bytes) {
+		for (int i = 0; i < bytes.limit(); i++) {
+			if (bytes.get(i) < 0) return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return bytes.limit();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) bytes.get(index);
+	}
+
+	@Override
+	public String subSequence(int start, int end) {
+		var text = new byte[end - start];
+		bytes.get(start, text);
+		return new String(text, StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length());
+	}
+}
@@ -0,0 +1,143 @@
+package me.minefreak19.tryp.lex;
+
+import me.minefreak19.tryp.lex.token.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sliding window over the tokens of one source file, stored as parallel primitive arrays.
+ * <p>
+ * For each token we keep its {@link TokenKind}, where it starts in the source and how long it is,
+ * and an int value: the ordinal of a {@link Keyword} or {@link Operator},
+ * or an index into the pool of names, string values and numbers.
+ * {@link Token} objects are only created when {@link #get(int)} asks for one,
+ * which the parser only does for the tokens the tree keeps.
+ * <p>
+ * Tokens are numbered from the start of the file, but only the last {@link #CAPACITY} of them are kept.
+ * Asking for a token that hasn't been lexed yet pulls it from the {@link Lexer}.
+ */
+public final class TokenBuffer {
+	/**
+	 * How many tokens are kept, which bounds how far back they can be looked at.
+	 * Must be a power of 2.
+	 */
+	public static final int CAPACITY = 16;
+	private static final int MASK = CAPACITY - 1;
+	// values() copies the array every time
+	private static final Keyword[] KEYWORDS = Keyword.values();
+	private static final Operator[] OPERATORS = Operator.values();
+
+	private final Lexer lexer;
+	private final CharSequence source;
+	private final LineMap lines;
+
+	private final byte[] kinds = new byte[CAPACITY];
+	private final int[] starts = new int[CAPACITY];
+	private final int[] lengths = new int[CAPACITY];
+	private final int[] values = new int[CAPACITY];
+	// tokens lexed so far
+	private int count = 0;
+
+	private final List<Object> pool = new ArrayList<>();
+	private final Map<Object, Integer> poolIndices = new HashMap<>();
+
+	TokenBuffer(Lexer lexer, CharSequence source, LineMap lines) {
+		this.lexer = lexer;
+		this.source = source;
+		this.lines = lines;
+	}
+
+	void add(TokenKind kind, int start, int length, int value) {
+		int slot = count & MASK;
+		kinds[slot] = (byte) kind.ordinal();
+		starts[slot] = start;
+		lengths[slot] = length;
+		values[slot] = value;
+		count++;
+	}
+
+	/**
+	 * @return Where token {@code i} is kept, lexing up to it first if needed.
+	 */
+	private int slot(int i) {
+		while (i >= count) lexer.nextToken();
+
+		if (i < count - CAPACITY) {
+			throw new IllegalStateException("token " + i + " has already left the buffer");
+		}
+
+		return i & MASK;
+	}
+
+	/**
+	 * @return The index of {@code value} in the pool, adding it if needed.
+	 */
+	int intern(Object value) {
+		Integer index = poolIndices.get(value);
+		if (index != null) return index;
+
+		pool.add(value);
+		poolIndices.put(value, pool.size() - 1);
+		return pool.size() - 1;
+	}
+
+	/**
+	 * @return How many tokens have been lexed so far.
+	 */
+	int count() {
+		return count;
+	}
+
+	public String fileName() {
+		return lines.fileName();
+	}
+
+	public TokenKind kind(int i) {
+		return TokenKind.fromOrdinal(kinds[slot(i)]);
+	}
+
+	public boolean isOperator(int i, Operator op) {
+		int slot = slot(i);
+		return kinds[slot] == TokenKind.OPERATOR.ordinal() && values[slot] == op.ordinal();
+	}
+
+	public boolean isKeyword(int i, Keyword kw) {
+		int slot = slot(i);
+		return kinds[slot] == TokenKind.KEYWORD.ordinal() && values[slot] == kw.ordinal();
+	}
+
+	/**
+	 * Only meaningful if {@code kind(i) == KEYWORD}.
+	 */
+	public Keyword keyword(int i) {
+		return KEYWORDS[values[slot(i)]];
+	}
+
+	public String text(int i) {
+		int slot = slot(i);
+		return source.subSequence(starts[slot], starts[slot] + lengths[slot]).toString();
+	}
+
+	public FileLocation loc(int i) {
+		return lines.at(starts[slot(i)]);
+	}
+
+	public Token get(int i) {
+		var loc = loc(i);
+		int value = values[slot(i)];
+		return switch (kind(i)) {
+			case IDENTIFIER -> new IdentifierToken(loc, (String) pool.get(value));
+			case KEYWORD -> new KeywordToken(loc, text(i));
+			case OPERATOR -> {
+				var op = OPERATORS[value];
+				yield new OpToken(loc, op.text, op);
+			}
+			case NUMBER -> new NumberToken(loc, text(i), (double) pool.get(value));
+			case STRING -> new StringToken(loc, text(i), (String) pool.get(value));
+			case EOF -> new EOFToken(loc);
+		};
+	}
+}
@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public enum Keyword {
+	// NOTE: The lexer recognises these with a switch in Lexer.keyword(),
+	//  so a new keyword has to be added there too.
 	CLASS("class"),
 	ELSE("else"),
 	EXTENDS("extends"),
@@ -4,9 +4,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public enum Operator {
-	// NOTE: These must be declared in decreasing order of
-	//  string length, so that the longer operators are checked
-	//  first during lexing. (i.e. check >= before >)
+	// NOTE: The lexer recognises these with a switch in Lexer.operator(),
+	//  so a new operator has to be added there too.
 	RIGHT_ARROW("->"),
 	GREATER_EQUAL(">="),
 	LESS_EQUAL("<="),
@@ -7,8 +7,7 @@ public abstract class Token {
 	private String text;
 
 	public Token(FileLocation loc, String text) {
-		if (loc != null)
-			this.loc = new FileLocation(loc);
+		this.loc = loc;
 		this.text = text;
 	}
 
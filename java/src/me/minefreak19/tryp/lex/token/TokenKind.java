@@ -0,0 +1,27 @@
+package me.minefreak19.tryp.lex.token;
+
+/**
+ * The kinds of token a {@link me.minefreak19.tryp.lex.TokenBuffer} holds,
+ * each matching one {@link Token} subclass.
+ */
+public enum TokenKind {
+	IDENTIFIER(IdentifierToken.class),
+	KEYWORD(KeywordToken.class),
+	OPERATOR(OpToken.class),
+	NUMBER(NumberToken.class),
+	STRING(StringToken.class),
+	EOF(EOFToken.class),
+	;
+
+	private static final TokenKind[] values = values();
+
+	public final Class<? extends Token> tokenType;
+
+	TokenKind(Class<? extends Token> tokenType) {
+		this.tokenType = tokenType;
+	}
+
+	public static TokenKind fromOrdinal(int ordinal) {
+		return values[ordinal];
+	}
+}
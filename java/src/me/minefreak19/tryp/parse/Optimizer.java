@@ -0,0 +1,395 @@
+package me.minefreak19.tryp.parse;
+
+import me.minefreak19.tryp.tree.Expr;
+import me.minefreak19.tryp.tree.Stmt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.minefreak19.tryp.eval.Interpreter.*;
+
+/**
+ * Simplifies a resolved program before it is run.
+ * <p>
+ * Operations on constant numbers, strings and booleans are folded into literals,
+ * branches that can never be taken are dropped, and groupings and {@code ,} chains are taken apart.
+ * A {@code while} whose condition is always true gets no condition at all,
+ * so that loops like {@code for (;;)} don't test one on every iteration.
+ * <p>
+ * Anything that could fail at runtime is left alone, so that it still fails the same way.
+ * Nodes are never changed in place, since the trees of included files are shared between programs;
+ * a node is only rebuilt if something under it was simplified, and keeps what the Resolver worked out about it.
+ */
+public final class Optimizer
+		implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	public List<Stmt> optimize(List<Stmt> program) {
+		return optimizeAll(program);
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr == null ? null : expr.accept(this);
+	}
+
+	/**
+	 * @return The simplified statement, or null if it does nothing.
+	 */
+	private Stmt optimize(Stmt stmt) {
+		return stmt == null ? null : stmt.accept(this);
+	}
+
+	/**
+	 * Simplifies a statement that has to stay a statement, like the body of an {@code if}.
+	 */
+	private Stmt optimizeBranch(Stmt stmt) {
+		Stmt optimized = optimize(stmt);
+		return optimized != null ? optimized : new Stmt.Block(List.of());
+	}
+
+	/**
+	 * @return The simplified statements, without the ones that do nothing or can't be reached.
+	 * This is {@code stmts} itself if none of them changed.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Stmt> List<T> optimizeAll(List<T> stmts) {
+		List<T> optimized = null;
+		for (int i = 0; i < stmts.size(); i++) {
+			T stmt = stmts.get(i);
+			T result = (T) optimize(stmt);
+
+			if (result != stmt && optimized == null) {
+				optimized = new ArrayList<>(stmts.subList(0, i));
+			}
+			if (optimized != null && result != null) optimized.add(result);
+
+			if (stmt instanceof Stmt.Return) {
+				if (i + 1 < stmts.size() && optimized == null) {
+					optimized = new ArrayList<>(stmts.subList(0, i + 1));
+				}
+				break;
+			}
+		}
+
+		return optimized != null ? optimized : stmts;
+	}
+
+	private List<Expr> optimizeExprs(List<Expr> exprs) {
+		List<Expr> optimized = null;
+		for (int i = 0; i < exprs.size(); i++) {
+			Expr expr = exprs.get(i);
+			Expr result = optimize(expr);
+
+			if (result != expr && optimized == null) {
+				optimized = new ArrayList<>(exprs.subList(0, i));
+			}
+			if (optimized != null) optimized.add(result);
+		}
+
+		return optimized != null ? optimized : exprs;
+	}
+
+	/**
+	 * @return Whether evaluating {@code expr} can neither fail nor have side effects.
+	 */
+	private static boolean isPure(Expr expr) {
+		return switch (expr) {
+			case Expr.Literal ignored -> true;
+			case Expr.Lambda ignored -> true;
+			case Expr.This ignored -> true;
+			case Expr.Variable variable -> variable.slot >= 0 || variable.upvalue >= 0;
+			default -> false;
+		};
+	}
+
+	/**
+	 * @return The value of {@code left op right}, or null if it isn't known before running it,
+	 * or would fail.
+	 */
+	private static Expr.Literal fold(Expr.Binary binary, Object left, Object right) {
+		boolean numbers = left instanceof Double && right instanceof Double;
+		Object value = switch (binary.operator.getValue()) {
+			case BANG_EQUAL -> !areEqual(left, right);
+			case EQUAL_EQUAL -> areEqual(left, right);
+
+			case PLUS -> {
+				if (left instanceof String strLeft && right instanceof String strRight)
+					yield strLeft + strRight;
+				else if (left instanceof String strLeft)
+					yield strLeft + stringify(right);
+				else if (right instanceof String strRight)
+					yield stringify(left) + strRight;
+				else if (numbers)
+					yield (double) left + (double) right;
+				else
+					yield null;
+			}
+
+			case MINUS -> numbers ? (Object) ((double) left - (double) right) : null;
+			case SLASH -> numbers ? (Object) ((double) left / (double) right) : null;
+			case STAR -> numbers ? (Object) ((double) left * (double) right) : null;
+			case PERCENT -> numbers ? (Object) ((double) left % (double) right) : null;
+			case GREATER_THAN -> numbers ? (Object) ((double) left > (double) right) : null;
+			case LESS_THAN -> numbers ? (Object) ((double) left < (double) right) : null;
+			case GREATER_EQUAL -> numbers ? (Object) ((double) left >= (double) right) : null;
+			case LESS_EQUAL -> numbers ? (Object) ((double) left <= (double) right) : null;
+
+			default -> null;
+		};
+
+		// nil is never the result of an operator, so it can stand for "can't fold"
+		return value != null ? new Expr.Literal(value) : null;
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		Expr value = optimize(expr.value);
+		if (value == expr.value) return expr;
+
+		var assign = new Expr.Assign(expr.name, value);
+		assign.slot = expr.slot;
+		assign.upvalue = expr.upvalue;
+		assign.global = expr.global;
+		return assign;
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		if (left instanceof Expr.Literal l && right instanceof Expr.Literal r) {
+			Expr.Literal folded = fold(expr, l.value, r.value);
+			if (folded != null) return folded;
+		}
+
+		if (left == expr.left && right == expr.right) return expr;
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		Expr callee = optimize(expr.callee);
+		List<Expr> args = optimizeExprs(expr.args);
+
+		if (callee == expr.callee && args == expr.args) return expr;
+		return new Expr.Call(callee, expr.paren, args);
+	}
+
+	@Override
+	public Expr visitCompoundExpr(Expr.Compound expr) {
+		var exprs = new ArrayList<Expr>();
+		for (Expr e : optimizeExprs(expr.exprs)) {
+			if (e instanceof Expr.Compound compound) {
+				exprs.addAll(compound.exprs);
+			} else {
+				exprs.add(e);
+			}
+		}
+
+		// only the value of the last one is kept
+		Expr last = exprs.get(exprs.size() - 1);
+		exprs.removeIf(e -> e != last && isPure(e));
+
+		if (exprs.size() == 1) return exprs.get(0);
+		if (exprs.equals(expr.exprs)) return expr;
+		return new Expr.Compound(exprs);
+	}
+
+	@Override
+	public Expr visitGetExpr(Expr.Get expr) {
+		Expr object = optimize(expr.object);
+		if (object == expr.object) return expr;
+
+		return new Expr.Get(object, expr.name);
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		return optimize(expr.expression);
+	}
+
+	@Override
+	public Expr visitLambdaExpr(Expr.Lambda expr) {
+		List<Stmt> body = optimizeAll(expr.body);
+		if (body == expr.body) return expr;
+
+		var lambda = new Expr.Lambda(expr.lambda, expr.params, body);
+		lambda.slots = expr.slots;
+		lambda.captures = expr.captures;
+		return lambda;
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		if (left instanceof Expr.Literal literal) {
+			boolean truthy = isTruthy(literal.value);
+			return switch (expr.operator.getValue()) {
+				case AND_AND -> truthy ? right : left;
+				case OR_OR -> truthy ? left : right;
+				default -> throw new AssertionError("unreachable");
+			};
+		}
+
+		if (left == expr.left && right == expr.right) return expr;
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitSetExpr(Expr.Set expr) {
+		Expr object = optimize(expr.object);
+		Expr value = optimize(expr.value);
+
+		if (object == expr.object && value == expr.value) return expr;
+		return new Expr.Set(object, expr.name, value);
+	}
+
+	@Override
+	public Expr visitSuperExpr(Expr.Super expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitTernaryExpr(Expr.Ternary expr) {
+		Expr condition = optimize(expr.condition);
+		Expr thenExpr = optimize(expr.thenExpr);
+		Expr elseExpr = optimize(expr.elseExpr);
+
+		if (condition instanceof Expr.Literal literal) {
+			return isTruthy(literal.value) ? thenExpr : elseExpr;
+		}
+
+		if (condition == expr.condition && thenExpr == expr.thenExpr && elseExpr == expr.elseExpr) return expr;
+		return new Expr.Ternary(condition, thenExpr, elseExpr);
+	}
+
+	@Override
+	public Expr visitThisExpr(Expr.This expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+
+		if (right instanceof Expr.Literal literal) {
+			switch (expr.operator.getValue()) {
+				case MINUS -> {
+					if (literal.value instanceof Double d) return new Expr.Literal(-d);
+				}
+				case BANG -> {
+					return new Expr.Literal(!isTruthy(literal.value));
+				}
+				default -> throw new AssertionError("unreachable");
+			}
+		}
+
+		if (right == expr.right) return expr;
+		return new Expr.Unary(expr.operator, right);
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		List<Stmt> statements = optimizeAll(stmt.statements);
+		if (statements.isEmpty()) return null;
+		if (statements == stmt.statements) return stmt;
+
+		var block = new Stmt.Block(statements);
+		block.first = stmt.first;
+		block.slots = stmt.slots;
+		return block;
+	}
+
+	@Override
+	public Stmt visitClassStmt(Stmt.Class stmt) {
+		List<Stmt.ProcDecl> methods = optimizeAll(stmt.methods);
+		if (methods == stmt.methods) return stmt;
+
+		var klass = new Stmt.Class(stmt.name, stmt.superclass, methods);
+		klass.slot = stmt.slot;
+		klass.superSlot = stmt.superSlot;
+		return klass;
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expr = optimize(stmt.expr);
+		if (isPure(expr)) return null;
+		if (expr == stmt.expr) return stmt;
+
+		return new Stmt.Expression(expr);
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+
+		if (condition instanceof Expr.Literal literal) {
+			return optimize(isTruthy(literal.value) ? stmt.thenBranch : stmt.elseBranch);
+		}
+
+		Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+		Stmt elseBranch = optimize(stmt.elseBranch);
+
+		if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+			return stmt;
+		}
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	@Override
+	public Stmt visitProcDeclStmt(Stmt.ProcDecl stmt) {
+		List<Stmt> body = optimizeAll(stmt.body);
+		if (body == stmt.body) return stmt;
+
+		var proc = new Stmt.ProcDecl(stmt.name, stmt.params, body, stmt.isStatic);
+		proc.slot = stmt.slot;
+		proc.slots = stmt.slots;
+		proc.captures = stmt.captures;
+		return proc;
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		Expr value = optimize(stmt.value);
+		if (value == stmt.value) return stmt;
+
+		return new Stmt.Return(stmt.kw, value);
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		Expr initializer = optimize(stmt.initializer);
+		if (initializer == stmt.initializer) return stmt;
+
+		var var = new Stmt.Var(stmt.name, initializer);
+		var.slot = stmt.slot;
+		return var;
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal literal) {
+			if (!isTruthy(literal.value)) return null;
+			condition = null;
+		}
+
+		Stmt body = optimizeBranch(stmt.body);
+		if (condition == stmt.condition && body == stmt.body) return stmt;
+
+		return new Stmt.While(condition, body);
+	}
+}
@@ -2,16 +2,13 @@ package me.minefreak19.tryp.parse;
 
 import me.minefreak19.tryp.SyntaxException;
 import me.minefreak19.tryp.lex.FileLocation;
-import me.minefreak19.tryp.lex.Lexer;
+import me.minefreak19.tryp.lex.TokenBuffer;
 import me.minefreak19.tryp.lex.token.*;
 import me.minefreak19.tryp.tree.Expr;
 import me.minefreak19.tryp.tree.Stmt;
 import me.minefreak19.tryp.util.CompilerError;
+import me.minefreak19.tryp.util.Diagnostics;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
 
 import static me.minefreak19.tryp.lex.token.Keyword.*;
@@ -19,23 +16,26 @@ import static me.minefreak19.tryp.lex.token.Operator.*;
 
 @SuppressWarnings("SameParameterValue")
 public final class Parser {
-	private final List<Token> tokens;
-	private final Set<Path> included;
+	private final TokenBuffer tokens;
+	private final Diagnostics diagnostics;
+	private final List<Include> includes = new ArrayList<>();
 	private List<Stmt> statements;
 	private int current;
 
-	public Parser(List<Token> tokens) {
-		this(tokens, new HashSet<>());
-
-		if (!tokens.isEmpty()) {
-			// extract file path out of token location
-			this.included.add(new File(this.tokens.get(0).getLoc().getName()).toPath());
-		}
+	/**
+	 * An {@code include} directive, whose file's statements the {@link ProgramLoader} splices in.
+	 *
+	 * @param index           Where in the program the statements go.
+	 * @param path            The string literal naming the file.
+	 * @param diagnosticsMark How many errors had been reported when the directive was parsed,
+	 *                        so that the included file's errors can be put in between.
+	 */
+	public record Include(int index, StringToken path, int diagnosticsMark) {
 	}
 
-	private Parser(List<Token> tokens, Set<Path> included) {
+	public Parser(TokenBuffer tokens, Diagnostics diagnostics) {
 		this.tokens = tokens;
-		this.included = included;
+		this.diagnostics = diagnostics;
 		this.current = 0;
 	}
 
@@ -43,11 +43,10 @@ public final class Parser {
 		advance();
 
 		while (!atEnd()) {
-			if (previous() instanceof OpToken opTok
-					    && opTok.getValue() == SEMICOLON) return;
+			if (tokens.isOperator(current - 1, SEMICOLON)) return;
 
-			if (peek() instanceof KeywordToken kwTok) {
-				switch (kwTok.getValue()) {
+			if (tokens.kind(current) == TokenKind.KEYWORD) {
+				switch (tokens.keyword(current)) {
 				case PROC, VAR, FOR, IF, WHILE, RETURN, INCLUDE -> {
 					return;
 				}
@@ -308,32 +307,19 @@ public final class Parser {
 	 * <p>
 	 * The statements of the other file's program are
 	 * appended to the current parser's program,
+	 * once the {@link ProgramLoader} has parsed it.
 	 */
 	private void includeDecl() {
 		var strLit = expect(StringToken.class);
 		expect(SEMICOLON);
-		String fileName = strLit.getValue();
-		var file = new File(fileName);
+		includes.add(new Include(statements.size(), strLit, diagnostics.count()));
+	}
 
-		try {
-			if (this.included.contains(file.toPath())) {
-				throw new CompilerError()
-						.error(strLit.getLoc(),
-								"Already included file `" + strLit.getValue() + "`")
-						.report();
-			}
-			var lexer = new Lexer(Files.readString(file.toPath()), FileLocation.from(file));
-			var tokens = lexer.tokens();
-			this.included.add(file.toPath());
-			var parser = new Parser(tokens, this.included);
-
-			var otherFile = parser.parse();
-			statements.addAll(otherFile);
-		} catch (IOException e) {
-			throw new CompilerError()
-					.error(strLit.getLoc(), e.getLocalizedMessage())
-					.report();
-		}
+	/**
+	 * @return The {@code include} directives found by {@link #parse()}, in order.
+	 */
+	public List<Include> includes() {
+		return includes;
 	}
 
 	private Stmt expressionStatement() {
@@ -409,7 +395,7 @@ public final class Parser {
 
 			throw new CompilerError()
 					.error(arrow.getLoc(), "Invalid target for assignment")
-					.report();
+					.report(diagnostics);
 		} else if (match(PLUS_EQUALS, MINUS_EQUALS, STAR_EQUALS, SLASH_EQUALS, PERCENT_EQUALS)) {
 			var op = (OpToken) previous();
 			return shorthandAssignment(expr, op.getValue().shorthandAssignmentFor, op.getLoc());
@@ -430,7 +416,7 @@ public final class Parser {
 
 		throw new CompilerError()
 				.error(opTokLoc, "Invalid target for operator " + op.text)
-				.report();
+				.report(diagnostics);
 	}
 
 	private Expr ternary() {
@@ -528,7 +514,8 @@ public final class Parser {
 
 		while (true) {
 			if (check(OPEN_PAREN)) {
-				var paren = (OpToken) expect(OPEN_PAREN);
+				advance();
+				var paren = (OpToken) previous();
 				List<Expr> args;
 				if (!check(CLOSE_PAREN)) {
 					args = procArgs();
@@ -552,7 +539,8 @@ public final class Parser {
 	}
 
 	private Expr primary() {
-		var token = advance();
+		advance();
+		var token = previous();
 		return switch (token) {
 
 			case KeywordToken kwTok -> switch (kwTok.getValue()) {
@@ -569,7 +557,7 @@ public final class Parser {
 
 				default -> throw new CompilerError()
 						.badToken(token, "Unexpected keyword here")
-						.report();
+						.report(diagnostics);
 			};
 
 			case NumberToken intTok -> new Expr.Literal(intTok.getValue());
@@ -583,7 +571,7 @@ public final class Parser {
 				} else {
 					throw new CompilerError()
 							.badToken(opTok, "Illegal start of expression")
-							.report();
+							.report(diagnostics);
 				}
 			}
 
@@ -591,7 +579,7 @@ public final class Parser {
 
 			default -> throw new CompilerError()
 					.badToken(token, "Expected expression")
-					.report();
+					.report(diagnostics);
 
 		};
 	}
@@ -606,7 +594,7 @@ public final class Parser {
 			if (ret.size() >= 255) {
 				new CompilerError()
 						.error(peek().getLoc(), "Function can't have more than 255 arguments")
-						.report();
+						.report(diagnostics);
 			}
 			ret.add(expression(true));
 		} while (match(COMMA));
@@ -614,26 +602,31 @@ public final class Parser {
 		return ret;
 	}
 
-	@SuppressWarnings("UnusedReturnValue")
-	private OpToken expect(Operator op) {
-		if (check(op))
-			return (OpToken) advance();
+	private void expect(Operator op) {
+		if (check(op)) {
+			advance();
+			return;
+		}
 
 		throw new CompilerError()
 				.expectedButFound(op.text, peek())
-				.report();
+				.report(diagnostics);
 	}
 
 	@SuppressWarnings("unchecked")
 	private <T extends Token> T expect(Class<T> tokenType) {
-		if (check(tokenType))
-			return (T) advance();
+		if (check(tokenType)) {
+			advance();
+			return (T) previous();
+		}
 
 		throw new CompilerError()
 				.expectedButFound(Token.humanTokType(tokenType), peek())
-				.report();
+				.report(diagnostics);
 	}
 
+	// previous() and peek() build a new Token each time,
+	//  so only call them for tokens that end up in the tree or in an error.
 	private Token previous() {
 		return tokens.get(current - 1);
 	}
@@ -642,38 +635,25 @@ public final class Parser {
 		return tokens.get(current);
 	}
 
-	private Token peekAhead() {
-		return tokens.size() > current
-				       ? tokens.get(current)
-				       : null;
-	}
-
 	private boolean atEnd() {
-		return peek() instanceof EOFToken;
+		return tokens.kind(current) == TokenKind.EOF;
 	}
 
-	private Token advance() {
+	private void advance() {
 		// TODO: handle this case properly (by throwing an error)
 		if (!atEnd()) current++;
-		return previous();
 	}
 
 	private boolean check(Operator op) {
-		if (atEnd()) return false;
-
-		return peek() instanceof OpToken opTok
-				       && opTok.getValue() == op;
+		return tokens.isOperator(current, op);
 	}
 
 	private boolean check(Keyword kw) {
-		if (atEnd()) return false;
-
-		return peek() instanceof KeywordToken kwTOk
-				       && kwTOk.getValue() == kw;
+		return tokens.isKeyword(current, kw);
 	}
 
 	private <T extends Token> boolean check(Class<T> tokenType) {
-		return peek().getClass() == tokenType;
+		return tokens.kind(current).tokenType == tokenType;
 	}
 
 	private boolean match(Operator... ops) {
@@ -698,7 +678,7 @@ public final class Parser {
 		return false;
 	}
 
-	public List<Token> tokens() {
+	public TokenBuffer tokens() {
 		return tokens;
 	}
 
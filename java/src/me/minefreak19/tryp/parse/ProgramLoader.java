@@ -0,0 +1,227 @@
+package me.minefreak19.tryp.parse;
+
+import me.minefreak19.tryp.lex.Lexer;
+import me.minefreak19.tryp.lex.MappedSource;
+import me.minefreak19.tryp.tree.Stmt;
+import me.minefreak19.tryp.util.CompilerError;
+import me.minefreak19.tryp.util.Diagnostics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes and parses a program along with every file it includes.
+ * <p>
+ * Included files are modules: each one is parsed once per JVM, on the common fork-join pool,
+ * into its own {@link Diagnostics}, and its tree is shared by every program that includes it.
+ * So included files are parsed at the same time as each other and as the file including them,
+ * and a library that many programs include is only parsed for the first of them.
+ * A module is parsed again if its file has been modified since.
+ * <p>
+ * The statements and errors of each file are spliced together in include order on the calling thread,
+ * which makes the result the same as parsing each included file in place, one after another.
+ * Files are told apart by their canonical path, and each one is only spliced in the first time it is included,
+ * however it was reached.
+ * <p>
+ * Sharing trees is safe because an included file's statements always end up at the top level of a program,
+ * so the Resolver annotates them the same way whichever program they are in.
+ */
+public final class ProgramLoader {
+	private static final Map<Path, Module> modules = new ConcurrentHashMap<>();
+
+	private final Diagnostics diagnostics;
+	private Path rootPath;
+	// in include order, without the root
+	private final Set<Path> included = new LinkedHashSet<>();
+	private final Set<ResolvedInclude> resolved = new LinkedHashSet<>();
+
+	/**
+	 * The path of an include directive, as written, and the canonical path of the file it named.
+	 * An include is resolved against the working directory, so the same directive can name another file in another run.
+	 */
+	public record ResolvedInclude(String path, Path file) {
+	}
+
+	private record ParsedFile(List<Stmt> statements,
+	                          List<Parser.Include> includes,
+	                          List<Path> includePaths,
+	                          Diagnostics diagnostics,
+	                          IOException readError) {
+		static ParsedFile failed(IOException readError) {
+			return new ParsedFile(List.of(), List.of(), List.of(), new Diagnostics(), readError);
+		}
+	}
+
+	/**
+	 * A file as it was when it was parsed.
+	 */
+	private record Module(ParseTask parse, FileTime modified, long size) {
+		boolean isCurrent(BasicFileAttributes attributes) {
+			return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class ParseTask extends RecursiveTask<ParsedFile> {
+		private final Path path;
+
+		ParseTask(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		protected ParsedFile compute() {
+			CharSequence source;
+			try {
+				source = MappedSource.read(path);
+			} catch (IOException e) {
+				return ParsedFile.failed(e);
+			}
+
+			return parse(source, path.toFile().getName());
+		}
+	}
+
+	/**
+	 * @param diagnostics Where the errors of every file end up.
+	 */
+	public ProgramLoader(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * @param file     The file {@code source} was read from, which is never included into it again,
+	 *                 or null if it wasn't read from a file.
+	 * @param fileName What {@code source} is called in errors.
+	 * @return The statements of {@code source}, with those of the files it includes spliced in.
+	 */
+	public List<Stmt> load(CharSequence source, Path file, String fileName) {
+		rootPath = file == null ? null : includePath(file);
+		var root = parse(source, fileName);
+
+		var program = new ArrayList<Stmt>();
+		splice(root, program);
+		return program;
+	}
+
+	/**
+	 * @return The canonical paths of the files {@link #load(CharSequence, Path, String)} spliced in,
+	 * in the order they were included.
+	 */
+	public List<Path> included() {
+		return List.copyOf(included);
+	}
+
+	/**
+	 * @return What every include directive {@link #load(CharSequence, Path, String)} came across resolved to,
+	 * including the ones it skipped.
+	 */
+	public List<ResolvedInclude> resolved() {
+		return List.copyOf(resolved);
+	}
+
+	/**
+	 * @param path The path of an include directive, as written.
+	 * @return The canonical path of the file it names from the current working directory.
+	 */
+	public static Path resolveInclude(String path) {
+		return includePath(new File(path).toPath());
+	}
+
+	/**
+	 * @param path A path from an include directive.
+	 * @return The canonical path of the included file, or {@code path} itself if it can't be found,
+	 * so that reading it fails with an error naming it as the program did.
+	 */
+	private static Path includePath(Path path) {
+		try {
+			return path.toRealPath();
+		} catch (IOException e) {
+			return path;
+		}
+	}
+
+	/**
+	 * @return The parse of the file at {@code path}, which is started if the file is new or has changed.
+	 */
+	private static ParseTask module(Path path) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			// not kept, in case the file turns up later
+			var task = new ParseTask(path);
+			task.fork();
+			return task;
+		}
+
+		return modules.compute(path, (p, module) -> {
+			if (module != null && module.isCurrent(attributes)) return module;
+
+			var task = new ParseTask(p);
+			task.fork();
+			return new Module(task, attributes.lastModifiedTime(), attributes.size());
+		}).parse();
+	}
+
+	/**
+	 * Parses one file, and starts parsing every file it includes that hasn't been parsed yet.
+	 */
+	private static ParsedFile parse(CharSequence source, String fileName) {
+		var fileDiagnostics = new Diagnostics();
+		var parser = new Parser(new Lexer(source, fileName, fileDiagnostics).tokens(), fileDiagnostics);
+		var statements = parser.parse();
+
+		var includePaths = new ArrayList<Path>();
+		for (var include : parser.includes()) {
+			Path path = resolveInclude(include.path().getValue());
+			includePaths.add(path);
+			module(path);
+		}
+
+		return new ParsedFile(statements, parser.includes(), includePaths, fileDiagnostics, null);
+	}
+
+	/**
+	 * Appends the statements of {@code file} to {@code program}, and replays its errors,
+	 * with those of each file it includes in between.
+	 * A file that has already been spliced in, or is being spliced in, is skipped.
+	 */
+	@SuppressWarnings("ThrowableNotThrown")
+	private void splice(ParsedFile file, List<Stmt> program) {
+		int from = 0;
+		int mark = 0;
+		for (int i = 0; i < file.includes().size(); i++) {
+			var include = file.includes().get(i);
+			program.addAll(file.statements().subList(from, include.index()));
+			diagnostics.replay(file.diagnostics(), mark, include.diagnosticsMark());
+			from = include.index();
+			mark = include.diagnosticsMark();
+
+			Path path = file.includePaths().get(i);
+			resolved.add(new ResolvedInclude(include.path().getValue(), path));
+			if (path.equals(rootPath) || included.contains(path)) continue;
+
+			var other = module(path).join();
+			if (other.readError() != null) {
+				new CompilerError()
+						.error(include.path().getLoc(), other.readError().getLocalizedMessage())
+						.report(diagnostics);
+				continue;
+			}
+
+			included.add(path);
+			splice(other, program);
+		}
+
+		program.addAll(file.statements().subList(from, file.statements().size()));
+		diagnostics.replay(file.diagnostics(), mark, file.diagnostics().count());
+	}
+}
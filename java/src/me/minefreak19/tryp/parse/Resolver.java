@@ -1,12 +1,13 @@
 package me.minefreak19.tryp.parse;
 
-import me.minefreak19.tryp.eval.Interpreter;
 import me.minefreak19.tryp.lex.token.KeywordToken;
 import me.minefreak19.tryp.lex.token.Token;
 import me.minefreak19.tryp.tree.Expr;
 import me.minefreak19.tryp.tree.Stmt;
 import me.minefreak19.tryp.util.CompilerError;
+import me.minefreak19.tryp.util.Diagnostics;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,9 +16,8 @@ import java.util.Stack;
 @SuppressWarnings("ThrowableNotThrown")
 public final class Resolver
 		implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-	private final Interpreter interpreter;
-	// stack<map<string name, boolean defined>>
-	private final Stack<Map<String, Var>> scopes = new Stack<>();
+	private final Diagnostics diagnostics;
+	private final Stack<Scope> scopes = new Stack<>();
 	private ProcType currentProc = ProcType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 
@@ -25,18 +25,62 @@ public final class Resolver
 		public boolean defined = false;
 		public boolean used = false;
 		public final Token name;
+		public final int slot;
 
-		public Var(boolean defined, boolean used, Token name) {
+		public Var(boolean defined, boolean used, Token name, int slot) {
 			this.defined = defined;
 			this.used = used;
 			this.name = name;
+			this.slot = slot;
 		}
 
-		public Var(Token name) {
+		public Var(Token name, int slot) {
 			this.name = name;
+			this.slot = slot;
 		}
 	}
 
+	// Every proc, lambda and method has a frame, which becomes one Environment when it is called.
+	// So does anything at the top level that declares locals, since there is no call there to share a frame with.
+	private static class Frame {
+		public final Frame enclosing;
+		public int slots = 0;
+		// where each variable of the frames around this one it refers to comes from, see capture()
+		public final List<Integer> captures = new ArrayList<>();
+
+		public Frame(Frame enclosing) {
+			this.enclosing = enclosing;
+		}
+	}
+
+	// A scope either starts a frame, or shares the frame of the scope around it,
+	//  where its variables get the slots after that scope's own.
+	@SuppressWarnings("serial")
+	private static class Scope extends HashMap<String, Var> {
+		public final Frame frame;
+		// the slot the next variable declared in this scope gets
+		public int next;
+
+		public Scope(Frame frame, int next) {
+			this.frame = frame;
+			this.next = next;
+		}
+
+		public int allocate() {
+			int slot = next++;
+			frame.slots = Math.max(frame.slots, next);
+			return slot;
+		}
+	}
+
+	/**
+	 * Where a local is: in a slot of the current frame, or an upvalue the current frame captured.
+	 * Whichever it isn't is -1, and a global is neither.
+	 */
+	private record Location(int slot, int upvalue) {
+		static final Location GLOBAL = new Location(-1, -1);
+	}
+
 	private enum ProcType {
 		NONE,
 		PROC,
@@ -49,8 +93,8 @@ public final class Resolver
 		NONE, CLASS, SUBCLASS,
 	}
 
-	public Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
+	public Resolver(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
 	}
 
 	public void resolve(List<Stmt> statements) {
@@ -65,13 +109,24 @@ public final class Resolver
 		expr.accept(this);
 	}
 
+	/**
+	 * Begins a scope with a frame of its own.
+	 */
 	private void beginScope() {
-		scopes.push(new HashMap<>());
+		scopes.push(new Scope(new Frame(scopes.isEmpty() ? null : scopes.peek().frame), 0));
+	}
+
+	/**
+	 * Begins a scope that shares the frame of the current one.
+	 */
+	private void beginSharedScope() {
+		scopes.push(new Scope(scopes.peek().frame, scopes.peek().next));
 	}
 
-	private void endScope() {
+	private Scope endScope() {
 		var scope = scopes.pop();
 		checkUnused(scope);
+		return scope;
 	}
 
 	private void checkUnused(Map<String, Var> scope) {
@@ -80,15 +135,33 @@ public final class Resolver
 				new CompilerError()
 						.error(entry.getValue().name.getLoc(),
 								"Unused variable " + entry.getKey())
-						.report();
+						.report(diagnostics);
 			}
 		}
 	}
 
-	private void declare(Token name) {
-		if (scopes.isEmpty()) return;
+	/**
+	 * @return The slot {@code name} was given in the current scope, or -1 if it is a global.
+	 */
+	private int declare(Token name) {
+		if (scopes.isEmpty()) return -1;
+
+		// A redeclaration reuses the old slot, so closures that captured it see the new value.
+		var scope = scopes.peek();
+		Var prev = scope.get(name.getText());
+		int slot = prev != null ? prev.slot : scope.allocate();
+		scope.put(name.getText(), new Var(name, slot));
+		return slot;
+	}
 
-		scopes.peek().put(name.getText(), new Var(name));
+	private void declareParams(List<Token> params) {
+		// Parameters always get consecutive slots, even if a name repeats,
+		//  since the arguments are copied into the frame by position.
+		var scope = scopes.peek();
+		for (Token param : params) {
+			scope.put(param.getText(), new Var(param, scope.allocate()));
+			define(param);
+		}
 	}
 
 	private void define(Token name) {
@@ -102,33 +175,75 @@ public final class Resolver
 		}
 	}
 
-	private void resolveLocal(Expr expr, Token name) {
-		for (int i = 0; i < scopes.size(); i++) {
-			if (scopes.get(i).containsKey(name.getText())) {
-				scopes.get(i).get(name.getText()).used = true;
-				interpreter.resolve(expr, scopes.size() - i - 1);
-				return;
+	/**
+	 * Marks the local {@code name} refers to as used, if {@code isRead}.
+	 * If it is declared in a frame around the current one, every frame in between captures it.
+	 */
+	private Location resolveLocal(Token name, boolean isRead) {
+		for (int i = scopes.size() - 1; i >= 0; i--) {
+			var scope = scopes.get(i);
+			Var var = scope.get(name.getText());
+			if (var != null) {
+				if (isRead) var.used = true;
+
+				Frame current = scopes.peek().frame;
+				if (scope.frame == current) return new Location(var.slot, -1);
+				return new Location(-1, capture(current, scope.frame, var.slot));
 			}
 		}
+
+		return Location.GLOBAL;
+	}
+
+	/**
+	 * Captures the variable in {@code slot} of {@code owner} into {@code frame}, which is inside it,
+	 * along with every frame in between.
+	 * A frame captures a variable either from a slot of the frame just around it, or from that frame's own upvalues,
+	 * and {@link Frame#captures} has the slot, or -1 minus the index of the upvalue, for each.
+	 *
+	 * @return The index of the variable among the upvalues of {@code frame}.
+	 */
+	private static int capture(Frame frame, Frame owner, int slot) {
+		int from = frame.enclosing == owner ? slot : -1 - capture(frame.enclosing, owner, slot);
+
+		// every variable visible from a frame is live while it is being made, so a slot means the same one here
+		int index = frame.captures.indexOf(from);
+		if (index < 0) {
+			index = frame.captures.size();
+			frame.captures.add(from);
+		}
+
+		return index;
+	}
+
+	private static int[] capturesOf(Frame frame) {
+		return frame.captures.stream().mapToInt(Integer::intValue).toArray();
 	}
 
 	private void resolveFunction(Stmt.ProcDecl proc, ProcType type) {
 		var prevProc = currentProc;
 		currentProc = type;
 		beginScope();
-		for (Token param : proc.params) {
-			declare(param);
-			define(param);
+		if (type == ProcType.METHOD || type == ProcType.CONSTRUCTOR) {
+			// The receiver is passed in slot 0 of a method's frame, ahead of the parameters.
+			scopes.peek().put("this", new Var(true, true, new KeywordToken(null, "this"), scopes.peek().allocate()));
 		}
+		declareParams(proc.params);
 
 		resolve(proc.body);
-		endScope();
+		Frame frame = endScope().frame;
+		proc.slots = frame.slots;
+		proc.captures = capturesOf(frame);
 		currentProc = prevProc;
 	}
 
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
+		// Only assigning to a variable doesn't count as using it.
+		Location location = resolveLocal(expr.name, false);
+		expr.slot = location.slot;
+		expr.upvalue = location.upvalue;
 		return null;
 	}
 
@@ -171,12 +286,12 @@ public final class Resolver
 		var prevProc = currentProc;
 		currentProc = ProcType.LAMBDA;
 		beginScope();
-		for (Token param : expr.params) {
-			declare(param);
-			define(param);
-		}
+		declareParams(expr.params);
 
 		resolve(expr.body);
+		Frame frame = endScope().frame;
+		expr.slots = frame.slots;
+		expr.captures = capturesOf(frame);
 
 		currentProc = prevProc;
 		return null;
@@ -208,9 +323,13 @@ public final class Resolver
 		if (this.currentClass != ClassType.SUBCLASS) {
 			new CompilerError()
 					.error(expr.kw.getLoc(), "Can't use `super` outside a subclass.")
-					.report();
+					.report(diagnostics);
 		}
-		resolveLocal(expr, expr.kw);
+		// `super` is declared around the methods, so is always captured.
+		expr.upvalue = resolveLocal(expr.kw, true).upvalue;
+		Location self = resolveLocal(new KeywordToken(expr.kw.getLoc(), "this"), true);
+		expr.thisSlot = self.slot;
+		expr.thisUpvalue = self.upvalue;
 		return null;
 	}
 
@@ -227,9 +346,11 @@ public final class Resolver
 		if (this.currentClass == ClassType.NONE) {
 			new CompilerError()
 					.badToken(expr.kw, "Can't use `this` outside a class")
-					.report();
+					.report(diagnostics);
 		}
-		resolveLocal(expr, expr.kw);
+		Location location = resolveLocal(expr.kw, true);
+		expr.slot = location.slot;
+		expr.upvalue = location.upvalue;
 		return null;
 	}
 
@@ -246,43 +367,65 @@ public final class Resolver
 				    && !scopes.peek().get(expr.name.getText()).defined) {
 			new CompilerError()
 					.error(expr.name.getLoc(), "Can't read local variable in its own initializer.")
-					.report();
+					.report(diagnostics);
 		}
 
-		resolveLocal(expr, expr.name);
+		Location location = resolveLocal(expr.name, true);
+		expr.slot = location.slot;
+		expr.upvalue = location.upvalue;
 		return null;
 	}
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
-		beginScope();
-		resolve(stmt.statements);
-		endScope();
+		// Only a block at the top level gets a frame of its own.
+		// Any other has its variables in the frame it is in, so that a loop over it allocates nothing,
+		//  and the Interpreter clears their slots once it is done with them, see Environment.clear().
+		// A block that declares nothing has 0 slots.
+		if (stmt.statements.stream().noneMatch(Resolver::isDeclaration)) {
+			resolve(stmt.statements);
+			stmt.slots = 0;
+		} else if (scopes.isEmpty()) {
+			beginScope();
+			resolve(stmt.statements);
+			stmt.slots = endScope().frame.slots;
+		} else {
+			beginSharedScope();
+			stmt.first = scopes.peek().next;
+			resolve(stmt.statements);
+			stmt.slots = endScope().next - stmt.first;
+		}
 		return null;
 	}
 
+	private static boolean isDeclaration(Stmt stmt) {
+		return stmt instanceof Stmt.Var || stmt instanceof Stmt.ProcDecl || stmt instanceof Stmt.Class;
+	}
+
 	@Override
 	public Void visitClassStmt(Stmt.Class stmt) {
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 
 		if (stmt.superclass != null) {
 			if (stmt.name.getText().equals(stmt.superclass.name.getText())) {
 				new CompilerError()
 						.error(stmt.superclass.name.getLoc(), "A class can't extend itself.")
-						.report();
+						.report(diagnostics);
 			}
 
-			beginScope();
-			scopes.peek().put("super", new Var(true, true, stmt.superclass.name));
-
+			// The superclass is evaluated outside the scope holding `super`.
 			resolve(stmt.superclass);
+
+			// `super` needs a frame of its own at the top level, or is the next variable of the current one.
+			if (scopes.isEmpty()) beginScope();
+			else beginSharedScope();
+			stmt.superSlot = scopes.peek().allocate();
+			scopes.peek().put("super", new Var(true, true, stmt.superclass.name, stmt.superSlot));
 		}
 
 		var prevClassType = this.currentClass;
 		this.currentClass = stmt.superclass == null ? ClassType.CLASS : ClassType.SUBCLASS;
-		beginScope();
-		scopes.peek().put("this", new Var(true, true, new KeywordToken(null, "this")));
 
 		for (Stmt.ProcDecl method : stmt.methods) {
 			ProcType type = ProcType.METHOD;
@@ -294,7 +437,6 @@ public final class Resolver
 			endScope();
 		}
 
-		endScope();
 		this.currentClass = prevClassType;
 
 		return null;
@@ -322,9 +464,9 @@ public final class Resolver
 			//  without checking the currentClass field.
 			new CompilerError()
 					.error(stmt.name.getLoc(), "Can't have static methods outside class")
-					.report();
+					.report(diagnostics);
 		}
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 
 		resolveFunction(stmt, ProcType.PROC);
@@ -337,7 +479,7 @@ public final class Resolver
 			if (currentProc == ProcType.CONSTRUCTOR) {
 				new CompilerError()
 						.error(stmt.kw.getLoc(), "Can't return a value from a constructor.")
-						.report();
+						.report(diagnostics);
 			}
 
 			resolve(stmt.value);
@@ -346,7 +488,7 @@ public final class Resolver
 		if (currentProc == ProcType.NONE) {
 			new CompilerError()
 					.error(stmt.kw.getLoc(), "Can't return from outside a proc.")
-					.report();
+					.report(diagnostics);
 		}
 
 		// we don't call endScope() here because resolution
@@ -357,7 +499,7 @@ public final class Resolver
 
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		if (stmt.initializer != null) {
 			resolve(stmt.initializer);
 		}
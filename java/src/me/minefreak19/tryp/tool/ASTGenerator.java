@@ -9,36 +9,55 @@ import java.util.List;
 public class ASTGenerator {
 	public static void main(String[] args) throws FileNotFoundException {
 		final String outDir = "src/me/minefreak19/tryp/tree";
+		// Fields after a `|` are mutable and left out of the constructor.
+		// They hold what the Resolver works out about a node, for the Interpreter to use,
+		//  or what the Interpreter learns about it as it runs.
+		// A local is either in a slot of the current frame, or is an upvalue the current proc captured
+		//  from a frame around it, and whichever it isn't is -1.
+		// A variable that is neither is a global,
+		//  and the Interpreter links it to its index in the global table on first use.
 		defineAST(outDir, "Expr", Arrays.asList(
 				// This gets a separate AST node, because its lhs can't be any old expression.
-				"Assign   : Token name, Expr value",
-				"Binary   : Expr left, OpToken operator, Expr right",
+				"Assign   : Token name, Expr value | int slot = -1, int upvalue = -1, int global = -1",
+				// operands: the types of operands seen so far, see Interpreter.visitBinaryExpr()
+				"Binary   : Expr left, OpToken operator, Expr right | byte operands",
 				"Call     : Expr callee, OpToken paren, List<Expr> args",
 				"Compound : List<Expr> exprs",
-				"Get      : Expr object, IdentifierToken name",
+				// cache: a PropertyCache, see Interpreter.visitGetExpr()
+				"Get      : Expr object, IdentifierToken name | Object cache",
 				"Grouping : Expr expression",
-				"Lambda   : OpToken lambda, List<Token> params, List<Stmt> body",
+				// captures: where each upvalue comes from, see Resolver.capture()
+				// proc: the declaration the Interpreter makes its procs from, made the first time it runs
+				"Lambda   : OpToken lambda, List<Token> params, List<Stmt> body" +
+						" | int slots, int[] captures, Stmt.ProcDecl proc",
 				"Literal  : Object value",
 				"Logical  : Expr left, OpToken operator, Expr right",
-				"Set      : Expr object, IdentifierToken name, Expr value",
+				"Set      : Expr object, IdentifierToken name, Expr value | Object cache",
 				// Carrying around a reference to the method being called (super.m())
 				//  is useful because the method needs to be bound to the *current* object
-				"Super    : KeywordToken kw, IdentifierToken method",
+				// `super` is always an upvalue, and `this` is where it is for a This
+				"Super    : KeywordToken kw, IdentifierToken method" +
+						" | int upvalue = -1, int thisSlot = -1, int thisUpvalue = -1",
 				"Ternary  : Expr condition, Expr thenExpr, Expr elseExpr",
-				"This     : KeywordToken kw",
+				"This     : KeywordToken kw | int slot = -1, int upvalue = -1",
 				"Unary    : OpToken operator, Expr right",
-				"Variable : Token name"
+				"Variable : Token name | int slot = -1, int upvalue = -1, int global = -1"
 		));
 
 		defineAST(outDir, "Stmt", Arrays.asList(
-				"Block      : List<Stmt> statements",
-				"Class      : IdentifierToken name, Expr.Variable superclass, List<Stmt.ProcDecl> methods",
+				// A block at the top level has a frame of its own, of `slots` slots.
+				// Any other has its variables in `slots` slots of the frame it is in, from `first` on.
+				"Block      : List<Stmt> statements | int first, int slots",
+				// superSlot: where `super` is, if there is a superclass
+				"Class      : IdentifierToken name, Expr.Variable superclass, List<Stmt.ProcDecl> methods" +
+						" | int slot = -1, int superSlot = -1",
 				"Expression : Expr expr",
 				"If         : Expr condition, Stmt thenBranch," +
 						" Stmt elseBranch",
-				"ProcDecl   : Token name, List<Token> params, List<Stmt> body, boolean isStatic",
+				"ProcDecl   : Token name, List<Token> params, List<Stmt> body, boolean isStatic" +
+						" | int slot = -1, int slots, int[] captures",
 				"Return     : Token kw, Expr value",
-				"Var        : Token name, Expr initializer",
+				"Var        : Token name, Expr initializer | int slot = -1",
 				"While      : Expr condition, Stmt body"
 		));
 	}
@@ -60,8 +79,9 @@ public class ASTGenerator {
 
 		for (String type : types) {
 			String className = type.split(":")[0].trim();
-			String fields = type.split(":")[1].trim();
-			defineType(w, baseName, className, fields);
+			String[] fields = type.split(":")[1].split("\\|");
+			String mutableFields = fields.length > 1 ? fields[1].trim() : null;
+			defineType(w, baseName, className, fields[0].trim(), mutableFields);
 			w.println();
 		}
 
@@ -85,7 +105,8 @@ public class ASTGenerator {
 		w.println("\t}");
 	}
 
-	private static void defineType(PrintWriter w, String baseName, String className, String fieldList) {
+	private static void defineType(PrintWriter w, String baseName, String className,
+	                               String fieldList, String mutableFieldList) {
 		w.println("\tpublic static class " + className + " extends " + baseName + " {");
 
 		String[] fields;
@@ -120,6 +141,13 @@ public class ASTGenerator {
 			for (String field : fields) {
 				w.println("\t\tpublic final " + field + ";");
 			}
+
+			if (mutableFieldList != null) {
+				w.println();
+				for (String field : mutableFieldList.split(", ")) {
+					w.println("\t\tpublic " + field + ";");
+				}
+			}
 		}
 
 		w.println("\t}");
@@ -36,6 +36,10 @@ public abstract class Expr {
 
 		public final Token name;
 		public final Expr value;
+
+		public int slot = -1;
+		public int upvalue = -1;
+		public int global = -1;
 	}
 
 	public static class Binary extends Expr {
@@ -53,6 +57,8 @@ public abstract class Expr {
 		public final Expr left;
 		public final OpToken operator;
 		public final Expr right;
+
+		public byte operands;
 	}
 
 	public static class Call extends Expr {
@@ -98,6 +104,8 @@ public abstract class Expr {
 
 		public final Expr object;
 		public final IdentifierToken name;
+
+		public Object cache;
 	}
 
 	public static class Grouping extends Expr {
@@ -128,6 +136,10 @@ public abstract class Expr {
 		public final OpToken lambda;
 		public final List<Token> params;
 		public final List<Stmt> body;
+
+		public int slots;
+		public int[] captures;
+		public Stmt.ProcDecl proc;
 	}
 
 	public static class Literal extends Expr {
@@ -175,6 +187,8 @@ public abstract class Expr {
 		public final Expr object;
 		public final IdentifierToken name;
 		public final Expr value;
+
+		public Object cache;
 	}
 
 	public static class Super extends Expr {
@@ -190,6 +204,10 @@ public abstract class Expr {
 
 		public final KeywordToken kw;
 		public final IdentifierToken method;
+
+		public int upvalue = -1;
+		public int thisSlot = -1;
+		public int thisUpvalue = -1;
 	}
 
 	public static class Ternary extends Expr {
@@ -220,6 +238,9 @@ public abstract class Expr {
 		}
 
 		public final KeywordToken kw;
+
+		public int slot = -1;
+		public int upvalue = -1;
 	}
 
 	public static class Unary extends Expr {
@@ -248,6 +269,10 @@ public abstract class Expr {
 		}
 
 		public final Token name;
+
+		public int slot = -1;
+		public int upvalue = -1;
+		public int global = -1;
 	}
 
 	public abstract <R> R accept(Visitor<R> visitor);
@@ -27,6 +27,9 @@ public abstract class Stmt {
 		}
 
 		public final List<Stmt> statements;
+
+		public int first;
+		public int slots;
 	}
 
 	public static class Class extends Stmt {
@@ -44,6 +47,9 @@ public abstract class Stmt {
 		public final IdentifierToken name;
 		public final Expr.Variable superclass;
 		public final List<Stmt.ProcDecl> methods;
+
+		public int slot = -1;
+		public int superSlot = -1;
 	}
 
 	public static class Expression extends Stmt {
@@ -93,6 +99,10 @@ public abstract class Stmt {
 		public final List<Token> params;
 		public final List<Stmt> body;
 		public final boolean isStatic;
+
+		public int slot = -1;
+		public int slots;
+		public int[] captures;
 	}
 
 	public static class Return extends Stmt {
@@ -123,6 +133,8 @@ public abstract class Stmt {
 
 		public final Token name;
 		public final Expr initializer;
+
+		public int slot = -1;
 	}
 
 	public static class While extends Stmt {
@@ -1,12 +1,9 @@
 package me.minefreak19.tryp.util;
 
 import me.minefreak19.tryp.SyntaxException;
-import me.minefreak19.tryp.Tryp;
 import me.minefreak19.tryp.lex.FileLocation;
 import me.minefreak19.tryp.lex.token.Token;
 
-import java.io.PrintStream;
-
 public class CompilerError {
 	private final StringBuilder message = new StringBuilder();
 
@@ -69,14 +66,9 @@ public class CompilerError {
 		return this;
 	}
 
-	public SyntaxException report() {
-		return report(System.err);
-	}
-
-	public SyntaxException report(PrintStream err) {
-		Tryp.hadError = true;
+	public SyntaxException report(Diagnostics diagnostics) {
 		String msg = this.message.toString();
-		err.print(msg);
+		diagnostics.report(msg);
 		message.setLength(0);
 		return new SyntaxException(msg);
 	}
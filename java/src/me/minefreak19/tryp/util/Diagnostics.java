@@ -0,0 +1,57 @@
+package me.minefreak19.tryp.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The errors reported while compiling one program, or one file of it.
+ * <p>
+ * Each compilation gets its own, so nothing about one compilation leaks into the next,
+ * and files can be compiled on different threads.
+ * A {@code Diagnostics} either prints every message as soon as it is reported,
+ * or holds on to them so that they can be replayed into another one in a fixed order.
+ */
+public final class Diagnostics {
+	private final PrintStream out;
+	private final List<String> messages = new ArrayList<>();
+
+	/**
+	 * @param out Where to print messages as they are reported.
+	 */
+	public Diagnostics(PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Makes a {@code Diagnostics} that only collects its messages.
+	 */
+	public Diagnostics() {
+		this(null);
+	}
+
+	public void report(String message) {
+		messages.add(message);
+		if (out != null) out.print(message);
+	}
+
+	/**
+	 * Reports the messages {@code from} (inclusive) to {@code to} (exclusive) of {@code other}.
+	 */
+	public void replay(Diagnostics other, int from, int to) {
+		for (int i = from; i < to; i++) {
+			report(other.messages.get(i));
+		}
+	}
+
+	/**
+	 * @return How many messages have been reported so far.
+	 */
+	public int count() {
+		return messages.size();
+	}
+
+	public boolean hadError() {
+		return !messages.isEmpty();
+	}
+}
@@ -0,0 +1,69 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.lex.token.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Growable buffer that a {@link Proto} is assembled in.
+ * <p>
+ * Every byte remembers the token of the instruction it belongs to,
+ * so that a {@link me.minefreak19.tryp.eval.RuntimeError} raised by the VM
+ * can point at the same location the tree-walker would.
+ */
+final class Chunk {
+	private byte[] code = new byte[64];
+	private Token[] tokens = new Token[64];
+	private int count = 0;
+
+	private final List<Object> constants = new ArrayList<>();
+	private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+	void write(int b, Token token) {
+		if (count == code.length) {
+			code = Arrays.copyOf(code, count * 2);
+			tokens = Arrays.copyOf(tokens, count * 2);
+		}
+
+		code[count] = (byte) b;
+		tokens[count] = token;
+		count++;
+	}
+
+	void patchU16(int offset, int value) {
+		code[offset] = (byte) ((value >> 8) & 0xff);
+		code[offset + 1] = (byte) (value & 0xff);
+	}
+
+	int count() {
+		return count;
+	}
+
+	/**
+	 * @return The index of {@code value} in the constant pool, adding it if needed.
+	 */
+	int addConstant(Object value) {
+		Integer index = constantIndices.get(value);
+		if (index != null) return index;
+
+		constants.add(value);
+		constantIndices.put(value, constants.size() - 1);
+		return constants.size() - 1;
+	}
+
+	byte[] code() {
+		return Arrays.copyOf(code, count);
+	}
+
+	Token[] tokens() {
+		return Arrays.copyOf(tokens, count);
+	}
+
+	Object[] constants() {
+		return constants.toArray();
+	}
+}
@@ -0,0 +1,741 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.eval.Globals;
+import me.minefreak19.tryp.lex.FileLocation;
+import me.minefreak19.tryp.lex.token.Operator;
+import me.minefreak19.tryp.lex.token.Token;
+import me.minefreak19.tryp.tree.Expr;
+import me.minefreak19.tryp.tree.Stmt;
+import me.minefreak19.tryp.util.CompilerError;
+import me.minefreak19.tryp.util.Diagnostics;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compiles a resolved program into bytecode for the {@link VirtualMachine}.
+ * <p>
+ * Locals live in the stack slots of their proc's frame that the {@link me.minefreak19.tryp.parse.Resolver}
+ * gave them, and are reached by index. Locals that are captured by a closure are reached through upvalues,
+ * and everything else is a global, interned into {@link Globals}.
+ * No variable is looked up by name at run time.
+ */
+@SuppressWarnings("ThrowableNotThrown")
+final class Compiler
+		implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	// operand size of locals and upvalues
+	private static final int MAX_SLOTS = 256;
+	private static final int MAX_U16 = 0xffff;
+
+	private final Globals globals;
+	private FunctionState current;
+	private Diagnostics diagnostics;
+	// most recent token we have seen, for errors about things without one (e.g. jumps)
+	private Token lastToken;
+
+	private enum ProcType {
+		SCRIPT,
+		PROC,
+		METHOD,
+		CONSTRUCTOR,
+	}
+
+	private static final class FunctionState {
+		final FunctionState enclosing;
+		final ProcType type;
+		final String name;
+		final int arity;
+		final int upvalueCount;
+		// Stack slot of the Resolver's slot 0.
+		// Slot 0 of a frame holds the callee, except in a method, where it is the receiver, which the Resolver counts too.
+		final int offset;
+		// how many slots the frame's variables take up, including slot 0
+		final int locals;
+		final Chunk chunk = new Chunk();
+		// the stack slots that closures made here captured, whose upvalues have to be closed when their block ends
+		final BitSet captured = new BitSet();
+		int stackDepth = 0;
+		int maxStackDepth = 0;
+
+		FunctionState(FunctionState enclosing, ProcType type, String name, int arity, int slots, int upvalueCount) {
+			this.enclosing = enclosing;
+			this.type = type;
+			this.name = name;
+			this.arity = arity;
+			this.upvalueCount = upvalueCount;
+			this.offset = type == ProcType.METHOD || type == ProcType.CONSTRUCTOR ? 0 : 1;
+			this.locals = offset + slots;
+		}
+
+		Proto finish() {
+			return new Proto(name, arity, type == ProcType.CONSTRUCTOR,
+					upvalueCount, locals, maxStackDepth,
+					chunk.code(), chunk.constants(), chunk.tokens());
+		}
+	}
+
+	Compiler(Globals globals) {
+		this.globals = globals;
+	}
+
+	/**
+	 * @return The top-level script, which the VM calls with no arguments.
+	 */
+	Proto compile(List<Stmt> program, Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+		current = new FunctionState(null, ProcType.SCRIPT, "<script>", 0, topLevelSlots(program), 0);
+		checkLocals(null);
+		adjustStack(current.locals);
+
+		program.forEach(this::compile);
+
+		emitOp(OpCode.NIL, null, 1);
+		emitOp(OpCode.RETURN, null, -1);
+
+		var script = current.finish();
+		current = null;
+		this.diagnostics = null;
+		return script;
+	}
+
+	/**
+	 * @return How many slots the frames the Resolver gave to blocks and `super` at the top level need.
+	 * Those frames are never live at the same time, so they all take up the same slots of the script's frame.
+	 */
+	private static int topLevelSlots(List<Stmt> statements) {
+		int slots = 0;
+		for (Stmt stmt : statements) {
+			slots = Math.max(slots, switch (stmt) {
+				case Stmt.Block block -> Math.max(block.slots, topLevelSlots(block.statements));
+				case Stmt.If ifStmt -> Math.max(topLevelSlots(List.of(ifStmt.thenBranch)),
+						ifStmt.elseBranch == null ? 0 : topLevelSlots(List.of(ifStmt.elseBranch)));
+				case Stmt.While loop -> topLevelSlots(List.of(loop.body));
+				case Stmt.Class klass -> klass.superclass != null ? 1 : 0;
+				default -> 0;
+			});
+		}
+
+		return slots;
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	private void error(String message) {
+		FileLocation loc = lastToken == null ? null : lastToken.getLoc();
+		new CompilerError()
+				.error(loc, message)
+				.report(diagnostics);
+	}
+
+	//region Emitting bytecode
+
+	private void adjustStack(int delta) {
+		current.stackDepth += delta;
+		if (current.stackDepth > current.maxStackDepth) {
+			current.maxStackDepth = current.stackDepth;
+		}
+	}
+
+	private void emit(int b, Token token) {
+		if (token != null) lastToken = token;
+		current.chunk.write(b, token);
+	}
+
+	private void emitOp(byte op, Token token, int stackEffect) {
+		emit(op, token);
+		adjustStack(stackEffect);
+	}
+
+	private void emitU16(int value, Token token) {
+		emit((value >> 8) & 0xff, token);
+		emit(value & 0xff, token);
+	}
+
+	private int constant(Object value) {
+		int index = current.chunk.addConstant(value);
+		if (index > MAX_U16) {
+			error("Too many constants in one proc.");
+		}
+
+		return index;
+	}
+
+	private void emitConstant(byte op, Object value, Token token, int stackEffect) {
+		int index = constant(value);
+		emitOp(op, token, stackEffect);
+		emitU16(index, token);
+	}
+
+	/**
+	 * @return The offset of the operand, to be passed to {@link #patchJump(int)}.
+	 */
+	private int emitJump(byte op, int stackEffect) {
+		emitOp(op, null, stackEffect);
+		emitU16(0xffff, null);
+		return current.chunk.count() - 2;
+	}
+
+	private void patchJump(int operand) {
+		int jump = current.chunk.count() - operand - 2;
+		if (jump > MAX_U16) {
+			error("Too much code to jump over.");
+		}
+
+		current.chunk.patchU16(operand, jump);
+	}
+
+	private void emitLoop(int loopStart) {
+		emitOp(OpCode.LOOP, null, 0);
+
+		int offset = current.chunk.count() - loopStart + 2;
+		if (offset > MAX_U16) {
+			error("Loop body too large.");
+		}
+
+		emitU16(offset, null);
+	}
+
+	//endregion
+
+	//region Variables
+
+	/**
+	 * Reports the error if the current proc has more locals than an operand can address.
+	 */
+	private void checkLocals(Token token) {
+		if (current.locals > MAX_SLOTS) {
+			if (token != null) lastToken = token;
+			error("Too many local variables in one proc.");
+		}
+	}
+
+	/**
+	 * @return The stack slot of the variable the Resolver gave {@code slot} in the current frame.
+	 */
+	private int local(int slot) {
+		return current.offset + slot;
+	}
+
+	/**
+	 * Closes the upvalues that closures made in a block captured, once the block is over,
+	 * so that whatever is declared in its slots next is a new variable, not one an earlier closure captured.
+	 *
+	 * @param first The first slot the Resolver gave to a variable of the block.
+	 */
+	private void endBlock(int first) {
+		int slot = local(first);
+		if (current.captured.nextSetBit(slot) < 0) return;
+
+		emitOp(OpCode.CLOSE_UPVALUES, null, 0);
+		emit(slot, null);
+		current.captured.clear(slot, MAX_SLOTS);
+	}
+
+	/**
+	 * Loads a variable from where the Resolver put it, see {@link Expr.Variable#slot}.
+	 */
+	private void load(int slot, int upvalue, String name, Token token) {
+		if (slot >= 0) {
+			emitOp(OpCode.GET_LOCAL, token, 1);
+			emit(local(slot), token);
+		} else if (upvalue >= 0) {
+			emitOp(OpCode.GET_UPVALUE, token, 1);
+			emit(upvalue, token);
+		} else {
+			emitOp(OpCode.GET_GLOBAL, token, 1);
+			emitU16(global(name, token), token);
+		}
+	}
+
+	/**
+	 * @param pop Whether to pop the stored value, e.g. for an assignment statement.
+	 */
+	private void store(int slot, int upvalue, Token name, boolean pop) {
+		int effect = pop ? -1 : 0;
+		if (slot >= 0) {
+			emitOp(pop ? OpCode.STORE_LOCAL : OpCode.SET_LOCAL, name, effect);
+			emit(local(slot), name);
+		} else if (upvalue >= 0) {
+			emitOp(pop ? OpCode.STORE_UPVALUE : OpCode.SET_UPVALUE, name, effect);
+			emit(upvalue, name);
+		} else {
+			emitOp(pop ? OpCode.STORE_GLOBAL : OpCode.SET_GLOBAL, name, effect);
+			emitU16(global(name.getText(), name), name);
+		}
+	}
+
+	private int global(String name, Token token) {
+		int index = globals.intern(name);
+		if (index > MAX_U16) {
+			lastToken = token;
+			error("Too many global variables.");
+		}
+
+		return index;
+	}
+
+	/**
+	 * Declares the variable whose value is on top of the stack,
+	 * in {@code slot} of the current frame, or as a global if the Resolver gave it no slot.
+	 * <p>
+	 * A local's slot may already be in use by an earlier variable with the same name,
+	 * which the Resolver gives it so that closures that captured it see the new value.
+	 */
+	private void defineVariable(int slot, Token name) {
+		if (slot >= 0) {
+			emitOp(OpCode.STORE_LOCAL, name, -1);
+			emit(local(slot), name);
+		} else {
+			emitOp(OpCode.DEFINE_GLOBAL, name, -1);
+			emitU16(global(name.getText(), name), name);
+		}
+	}
+
+	//endregion
+
+	/**
+	 * Compiles a proc body into its own {@link Proto},
+	 * then emits the {@link OpCode#CLOSURE} that instantiates it.
+	 *
+	 * @param slots    How many slots the Resolver gave the proc's frame.
+	 * @param captures Where each of the proc's upvalues comes from, see {@link Stmt.ProcDecl#captures}.
+	 */
+	private void function(String name, List<Token> params, List<Stmt> body, int slots, int[] captures,
+	                      ProcType type, Token token) {
+		var fs = new FunctionState(current, type, name, params.size(), slots, captures.length);
+		current = fs;
+		checkLocals(token);
+		adjustStack(fs.locals);
+
+		body.forEach(this::compile);
+
+		if (type == ProcType.CONSTRUCTOR) {
+			emitOp(OpCode.GET_LOCAL, null, 1);
+			emit(0, null);
+		} else {
+			emitOp(OpCode.NIL, null, 1);
+		}
+		emitOp(OpCode.RETURN, null, -1);
+
+		var proto = fs.finish();
+		current = fs.enclosing;
+
+		if (captures.length > MAX_SLOTS) {
+			lastToken = token;
+			error("Too many captured variables in one proc.");
+		}
+
+		emitConstant(OpCode.CLOSURE, proto, token, 1);
+		for (int from : captures) {
+			// a slot of this frame, or -1 minus the index of one of its upvalues
+			if (from >= 0) {
+				current.captured.set(local(from));
+				emit(1, token);
+				emit(local(from), token);
+			} else {
+				emit(0, token);
+				emit(-1 - from, token);
+			}
+		}
+	}
+
+	/**
+	 * Compiles a branch condition, fusing comparisons with the jump.
+	 *
+	 * @return The jump taken when the condition is false, see {@link #patchJump(int)}.
+	 */
+	private int condition(Expr condition) {
+		if (condition instanceof Expr.Binary binary) {
+			byte jump = switch (binary.operator.getValue()) {
+				case GREATER_THAN -> OpCode.JUMP_IF_NOT_GREATER;
+				case GREATER_EQUAL -> OpCode.JUMP_IF_NOT_GREATER_EQUAL;
+				case LESS_THAN -> OpCode.JUMP_IF_NOT_LESS;
+				case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL;
+				default -> -1;
+			};
+
+			if (jump != -1) {
+				compile(binary.left);
+				compile(binary.right);
+				emitOp(jump, binary.operator, -2);
+				emitU16(0xffff, binary.operator);
+				return current.chunk.count() - 2;
+			}
+		}
+
+		compile(condition);
+		return emitJump(OpCode.POP_JUMP_IF_FALSE, -1);
+	}
+
+	/**
+	 * @return Whether evaluating {@code expr} can neither fail nor have side effects.
+	 */
+	private boolean isPure(Expr expr) {
+		return switch (expr) {
+			case Expr.Literal ignored -> true;
+			case Expr.This ignored -> true;
+			case Expr.Grouping grouping -> isPure(grouping.expression);
+			case Expr.Variable variable -> variable.slot >= 0;
+			default -> false;
+		};
+	}
+
+	/**
+	 * Loads {@code this} and then the superclass, for a {@code super} access.
+	 */
+	private void loadSuper(Expr.Super expr) {
+		load(expr.thisSlot, expr.thisUpvalue, "this", expr.kw);
+		// `super` is always captured, see Resolver.visitSuperExpr()
+		emitOp(OpCode.GET_UPVALUE, expr.kw, 1);
+		emit(expr.upvalue, expr.kw);
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		store(expr.slot, expr.upvalue, expr.name, false);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+
+		if (expr.right instanceof Expr.Literal literal && literal.value instanceof Double) {
+			// `i + 1`, `n - 1`, ...
+			switch (expr.operator.getValue()) {
+				case PLUS -> {
+					emitConstant(OpCode.ADD_CONSTANT, literal.value, expr.operator, 0);
+					return null;
+				}
+				case MINUS -> {
+					emitConstant(OpCode.SUBTRACT_CONSTANT, literal.value, expr.operator, 0);
+					return null;
+				}
+			}
+		}
+
+		byte op = switch (expr.operator.getValue()) {
+			case BANG_EQUAL -> OpCode.NOT_EQUAL;
+			case EQUAL_EQUAL -> OpCode.EQUAL;
+			case PLUS -> OpCode.ADD;
+			case MINUS -> OpCode.SUBTRACT;
+			case SLASH -> OpCode.DIVIDE;
+			case STAR -> OpCode.MULTIPLY;
+			case PERCENT -> OpCode.MODULO;
+			case GREATER_THAN -> OpCode.GREATER;
+			case LESS_THAN -> OpCode.LESS;
+			case GREATER_EQUAL -> OpCode.GREATER_EQUAL;
+			case LESS_EQUAL -> OpCode.LESS_EQUAL;
+			case COMMA -> {
+				emitOp(OpCode.POP, null, -1);
+				compile(expr.right);
+				yield -1;
+			}
+
+			default -> throw new AssertionError("unreachable");
+		};
+
+		if (op != -1) {
+			compile(expr.right);
+			emitOp(op, expr.operator, -1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		if (expr.callee instanceof Expr.Get get) {
+			// obj.method(args): call the method with obj as receiver, without binding it
+			compile(get.object);
+			emitConstant(OpCode.GET_METHOD, new PropertyCache(get.name.getText()), get.name, 1);
+		} else if (expr.callee instanceof Expr.Super sup) {
+			loadSuper(sup);
+			emitConstant(OpCode.GET_SUPER_METHOD, sup.method.getText(), sup.method, 0);
+		} else {
+			compile(expr.callee);
+		}
+
+		expr.args.forEach(this::compile);
+
+		int argc = expr.args.size();
+		if (expr.callee instanceof Expr.Get || expr.callee instanceof Expr.Super) {
+			emitOp(OpCode.INVOKE, expr.paren, -argc - 1);
+		} else {
+			emitOp(OpCode.CALL, expr.paren, -argc);
+		}
+		emit(argc, expr.paren);
+		return null;
+	}
+
+	@Override
+	public Void visitCompoundExpr(Expr.Compound expr) {
+		for (int i = 0; i < expr.exprs.size() - 1; i++) {
+			compile(expr.exprs.get(i));
+			emitOp(OpCode.POP, null, -1);
+		}
+
+		compile(expr.exprs.get(expr.exprs.size() - 1));
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		compile(expr.object);
+		emitConstant(OpCode.GET_PROPERTY, new PropertyCache(expr.name.getText()), expr.name, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLambdaExpr(Expr.Lambda expr) {
+		function("<lambda fn>", expr.params, expr.body, expr.slots, expr.captures, ProcType.PROC, expr.lambda);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		switch (expr.value) {
+			case null -> emitOp(OpCode.NIL, null, 1);
+			case Boolean b -> emitOp(b ? OpCode.TRUE : OpCode.FALSE, null, 1);
+			default -> emitConstant(OpCode.CONSTANT, expr.value, null, 1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+
+		int end = switch (expr.operator.getValue()) {
+			case AND_AND -> emitJump(OpCode.JUMP_IF_FALSE, 0);
+			case OR_OR -> emitJump(OpCode.JUMP_IF_TRUE, 0);
+
+			default -> throw new AssertionError("unreachable");
+		};
+
+		emitOp(OpCode.POP, null, -1);
+		compile(expr.right);
+		patchJump(end);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		setProperty(expr, false);
+		return null;
+	}
+
+	/**
+	 * @param pop Whether to pop the stored value, e.g. for an assignment statement.
+	 */
+	private void setProperty(Expr.Set expr, boolean pop) {
+		compile(expr.object);
+		if (!isPure(expr.value)) {
+			// the tree-walker rejects non-instances before evaluating the value
+			emitOp(OpCode.CHECK_INSTANCE, expr.name, 0);
+		}
+		compile(expr.value);
+		emitConstant(pop ? OpCode.STORE_PROPERTY : OpCode.SET_PROPERTY,
+				new PropertyCache(expr.name.getText()), expr.name, pop ? -2 : -1);
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expr) {
+		loadSuper(expr);
+		emitConstant(OpCode.GET_SUPER, expr.method.getText(), expr.method, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitTernaryExpr(Expr.Ternary expr) {
+		int elseJump = condition(expr.condition);
+
+		compile(expr.thenExpr);
+		int endJump = emitJump(OpCode.JUMP, 0);
+		// only one of the branches leaves its value on the stack
+		adjustStack(-1);
+
+		patchJump(elseJump);
+		compile(expr.elseExpr);
+		patchJump(endJump);
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expr) {
+		load(expr.slot, expr.upvalue, "this", expr.kw);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+
+		switch (expr.operator.getValue()) {
+			case MINUS -> emitOp(OpCode.NEGATE, expr.operator, 0);
+			case BANG -> emitOp(OpCode.NOT, expr.operator, 0);
+
+			default -> throw new AssertionError("unreachable");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		load(expr.slot, expr.upvalue, expr.name.getText(), expr.name);
+		return null;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		stmt.statements.forEach(this::compile);
+		if (stmt.slots > 0) endBlock(stmt.first);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		boolean hasSuper = stmt.superclass != null;
+		if (hasSuper) {
+			compile(stmt.superclass);
+		}
+
+		int nameIndex = constant(stmt.name.getText());
+		// the superclass is checked by CLASS, so errors point at it
+		Token token = hasSuper ? stmt.superclass.name : stmt.name;
+		emitOp(OpCode.CLASS, token, hasSuper ? 0 : 1);
+		emitU16(nameIndex, token);
+		emit(hasSuper ? 1 : 0, token);
+
+		defineVariable(stmt.slot, stmt.name);
+
+		if (hasSuper) {
+			// `super` is a variable of its own, around the methods, see Resolver.visitClassStmt().
+			// Reading the superclass variable again can't fail or have side effects.
+			compile(stmt.superclass);
+			defineVariable(stmt.superSlot, stmt.superclass.name);
+		}
+
+		load(stmt.slot, -1, stmt.name.getText(), stmt.name);
+		for (var method : stmt.methods) {
+			ProcType type = method.name.getText().equals(VmClass.INITIALIZER)
+					                ? ProcType.CONSTRUCTOR
+					                : ProcType.METHOD;
+			function(method.name.getText(), method.params, method.body, method.slots, method.captures,
+					type, method.name);
+			emitConstant(method.isStatic ? OpCode.STATIC_METHOD : OpCode.METHOD,
+					method.name.getText(), method.name, -1);
+		}
+		emitOp(OpCode.POP, null, -1);
+
+		// the methods have captured `super`, so its slot can go to the next variable
+		if (hasSuper) endBlock(stmt.superSlot);
+
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		if (stmt.expr instanceof Expr.Assign assign) {
+			if (assign.slot >= 0
+					    && assign.value instanceof Expr.Binary binary
+					    && binary.operator.getValue() == Operator.PLUS
+					    && binary.left instanceof Expr.Variable variable && variable.slot == assign.slot
+					    && binary.right instanceof Expr.Literal literal && literal.value instanceof Double) {
+				// `i += 1`, which ends nearly every for loop
+				emitConstant(OpCode.INCREMENT_LOCAL, literal.value, binary.operator, 0);
+				emit(local(assign.slot), binary.operator);
+				return null;
+			}
+
+			compile(assign.value);
+			store(assign.slot, assign.upvalue, assign.name, true);
+			return null;
+		}
+
+		if (stmt.expr instanceof Expr.Set set) {
+			setProperty(set, true);
+			return null;
+		}
+
+		compile(stmt.expr);
+		emitOp(OpCode.POP, null, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		int elseJump = condition(stmt.condition);
+		compile(stmt.thenBranch);
+
+		if (stmt.elseBranch != null) {
+			int endJump = emitJump(OpCode.JUMP, 0);
+			patchJump(elseJump);
+			compile(stmt.elseBranch);
+			patchJump(endJump);
+		} else {
+			patchJump(elseJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclStmt(Stmt.ProcDecl stmt) {
+		function(stmt.name.getText(), stmt.params, stmt.body, stmt.slots, stmt.captures, ProcType.PROC, stmt.name);
+		defineVariable(stmt.slot, stmt.name);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (current.type == ProcType.CONSTRUCTOR) {
+			// constructors always return the instance
+			emitOp(OpCode.GET_LOCAL, stmt.kw, 1);
+			emit(0, stmt.kw);
+		} else if (stmt.value != null) {
+			compile(stmt.value);
+		} else {
+			emitOp(OpCode.NIL, stmt.kw, 1);
+		}
+
+		emitOp(OpCode.RETURN, stmt.kw, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			emitOp(OpCode.NIL, stmt.name, 1);
+		}
+
+		defineVariable(stmt.slot, stmt.name);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int loopStart = current.chunk.count();
+		// the Optimizer drops conditions that are always true
+		int exitJump = stmt.condition != null ? condition(stmt.condition) : -1;
+
+		compile(stmt.body);
+		emitLoop(loopStart);
+
+		if (exitJump != -1) patchJump(exitJump);
+		return null;
+	}
+}
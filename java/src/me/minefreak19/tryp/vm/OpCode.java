@@ -0,0 +1,124 @@
+package me.minefreak19.tryp.vm;
+
+/**
+ * Instruction set of the {@link VirtualMachine}.
+ * <p>
+ * Every instruction is one opcode byte followed by its operands.
+ * {@code u8} operands are a single unsigned byte, {@code u16} operands
+ * are two bytes, big-endian. Stack effects are written as {@code [before] -> [after]}.
+ */
+final class OpCode {
+	private OpCode() {
+	}
+
+	/** u16 constant: {@code [] -> [constant]} */
+	static final byte CONSTANT = 0;
+	/** {@code [] -> [nil]} */
+	static final byte NIL = 1;
+	/** {@code [] -> [true]} */
+	static final byte TRUE = 2;
+	/** {@code [] -> [false]} */
+	static final byte FALSE = 3;
+
+	/** {@code [a] -> []} */
+	static final byte POP = 4;
+
+	/** u8 slot: {@code [] -> [local]} */
+	static final byte GET_LOCAL = 5;
+	/** u8 slot: {@code [a] -> [a]}, stores a in the local */
+	static final byte SET_LOCAL = 6;
+	/** u8 index: {@code [] -> [upvalue]} */
+	static final byte GET_UPVALUE = 7;
+	/** u8 index: {@code [a] -> [a]}, stores a in the upvalue */
+	static final byte SET_UPVALUE = 8;
+	/** u16 global: {@code [] -> [global]} */
+	static final byte GET_GLOBAL = 9;
+	/** u16 global: {@code [a] -> [a]}, stores a in an already defined global */
+	static final byte SET_GLOBAL = 10;
+	/** u16 global: {@code [a] -> []}, (re)defines the global */
+	static final byte DEFINE_GLOBAL = 11;
+
+	/** u16 {@link PropertyCache}: {@code [instance] -> [value]} */
+	static final byte GET_PROPERTY = 12;
+	/** u16 {@link PropertyCache}: {@code [instance, value] -> [value]} */
+	static final byte SET_PROPERTY = 13;
+	/** {@code [object] -> [object]}, fails unless object is an instance */
+	static final byte CHECK_INSTANCE = 14;
+	/** u16 name: {@code [this, superclass] -> [bound method]} */
+	static final byte GET_SUPER = 15;
+
+	static final byte EQUAL = 16;
+	static final byte NOT_EQUAL = 17;
+	static final byte GREATER = 18;
+	static final byte GREATER_EQUAL = 19;
+	static final byte LESS = 20;
+	static final byte LESS_EQUAL = 21;
+	static final byte ADD = 22;
+	static final byte SUBTRACT = 23;
+	static final byte MULTIPLY = 24;
+	static final byte DIVIDE = 25;
+	static final byte MODULO = 26;
+	static final byte NOT = 27;
+	static final byte NEGATE = 28;
+
+	/** u16 offset: unconditional forward jump */
+	static final byte JUMP = 29;
+	/** u16 offset: forward jump if the top of the stack is falsey, without popping it */
+	static final byte JUMP_IF_FALSE = 30;
+	/** u16 offset: forward jump if the top of the stack is truthy, without popping it */
+	static final byte JUMP_IF_TRUE = 31;
+	/** u16 offset: pops the top of the stack and jumps forward if it was falsey */
+	static final byte POP_JUMP_IF_FALSE = 32;
+	/** u16 offset: unconditional backward jump */
+	static final byte LOOP = 33;
+
+	/** u8 argc: {@code [callee, args...] -> [result]} */
+	static final byte CALL = 34;
+	/** u16 {@link PropertyCache}: {@code [instance] -> [callee, receiver]} */
+	static final byte GET_METHOD = 35;
+	/** u16 name: {@code [this, superclass] -> [method, this]} */
+	static final byte GET_SUPER_METHOD = 36;
+	/** u8 argc: {@code [callee, receiver, args...] -> [result]}, see {@link #GET_METHOD} */
+	static final byte INVOKE = 37;
+	/**
+	 * u16 proto, then a (u8 isLocal, u8 index) pair per upvalue:
+	 * {@code [] -> [closure]}
+	 */
+	static final byte CLOSURE = 38;
+	/** u8 slot: {@code [] -> []}, moving the locals from slot on into the heap for the closures that captured them */
+	static final byte CLOSE_UPVALUES = 39;
+	/** {@code [a] -> []}, returns a to the caller */
+	static final byte RETURN = 40;
+
+	/** u16 name, u8 hasSuper: {@code [superclass]? -> [class]} */
+	static final byte CLASS = 41;
+	/** u16 name: {@code [class, closure] -> [class]} */
+	static final byte METHOD = 42;
+	/** u16 name: {@code [class, closure] -> [class]}, adds to the metaclass */
+	static final byte STATIC_METHOD = 43;
+
+	// Superinstructions, each standing in for a common sequence of the instructions above.
+
+	/** u8 slot: {@code SET_LOCAL slot; POP} */
+	static final byte STORE_LOCAL = 44;
+	/** u8 index: {@code SET_UPVALUE index; POP} */
+	static final byte STORE_UPVALUE = 45;
+	/** u16 global: {@code SET_GLOBAL global; POP} */
+	static final byte STORE_GLOBAL = 46;
+	/** u16 constant: {@code CONSTANT constant; ADD} */
+	static final byte ADD_CONSTANT = 47;
+	/** u16 constant: {@code CONSTANT constant; SUBTRACT} */
+	static final byte SUBTRACT_CONSTANT = 48;
+	/** u16 offset: {@code GREATER; POP_JUMP_IF_FALSE offset} */
+	static final byte JUMP_IF_NOT_GREATER = 49;
+	/** u16 offset: {@code GREATER_EQUAL; POP_JUMP_IF_FALSE offset} */
+	static final byte JUMP_IF_NOT_GREATER_EQUAL = 50;
+	/** u16 offset: {@code LESS; POP_JUMP_IF_FALSE offset} */
+	static final byte JUMP_IF_NOT_LESS = 51;
+	/** u16 offset: {@code LESS_EQUAL; POP_JUMP_IF_FALSE offset} */
+	static final byte JUMP_IF_NOT_LESS_EQUAL = 52;
+	/** u16 constant, u8 slot: {@code GET_LOCAL slot; ADD_CONSTANT constant; STORE_LOCAL slot} */
+	static final byte INCREMENT_LOCAL = 53;
+	/** u16 {@link PropertyCache}: {@code SET_PROPERTY cache; POP} */
+	static final byte STORE_PROPERTY = 54;
+}
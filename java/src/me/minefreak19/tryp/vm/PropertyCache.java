@@ -0,0 +1,113 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.eval.Shape;
+
+import java.util.Arrays;
+
+/**
+ * An inline cache for one property access in the bytecode,
+ * the same as the tree-walker's {@code eval.PropertyCache}.
+ * <p>
+ * Each access gets its own cache in the constants of its {@link Proto},
+ * in place of the name of the property.
+ */
+final class PropertyCache {
+	private static final int LIMIT = 4;
+	private static final Entry[] EMPTY = {};
+
+	/**
+	 * Returned by {@link #get} when the instance has no such property.
+	 */
+	static final Object MISSING = new Object();
+
+	/**
+	 * @param index  The slot of the field, or -1 if the property is a method.
+	 * @param method For a get, the method the property is, if it isn't a field.
+	 * @param next   For a set, the shape of the instance afterwards.
+	 */
+	private record Entry(Shape shape, int index, VmClosure method, Shape next) {
+	}
+
+	final String name;
+	private Entry[] entries = EMPTY;
+
+	PropertyCache(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return The field or bound method, or {@link #MISSING}.
+	 */
+	Object get(VmInstance instance) {
+		Entry entry = lookup(instance);
+		if (entry != null) {
+			return entry.method == null ? instance.values[entry.index] : new VmBoundMethod(instance, entry.method);
+		}
+
+		int index = instance.shape.indexOf(name);
+		if (index >= 0) return instance.values[index];
+
+		VmClosure method = instance.klass.findMethod(name);
+		return method == null ? MISSING : new VmBoundMethod(instance, method);
+	}
+
+	/**
+	 * @return The method the property is, to be invoked on {@code instance} directly,
+	 * or null if it is a field or isn't there.
+	 */
+	VmClosure method(VmInstance instance) {
+		Entry entry = lookup(instance);
+		if (entry != null) return entry.method;
+		if (entries.length < LIMIT) return null;
+
+		// megamorphic
+		return instance.shape.indexOf(name) < 0 ? instance.klass.findMethod(name) : null;
+	}
+
+	/**
+	 * @return Where the property is for the shape of {@code instance},
+	 * or null if it isn't there or the site is megamorphic and hasn't cached the shape.
+	 */
+	private Entry lookup(VmInstance instance) {
+		Shape shape = instance.shape;
+		for (Entry entry : entries) {
+			if (entry.shape == shape) return entry;
+		}
+
+		if (entries.length == LIMIT) return null;
+
+		int index = shape.indexOf(name);
+		if (index >= 0) return add(new Entry(shape, index, null, null));
+
+		VmClosure method = instance.klass.findMethod(name);
+		if (method == null) return null;
+
+		return add(new Entry(shape, -1, method, null));
+	}
+
+	void set(VmInstance instance, Object value) {
+		Shape shape = instance.shape;
+		for (Entry entry : entries) {
+			if (entry.shape == shape) {
+				instance.setAt(entry.index, entry.next, value);
+				return;
+			}
+		}
+
+		instance.set(name, value);
+		if (entries.length < LIMIT) {
+			add(new Entry(shape, instance.shape.indexOf(name), null, instance.shape));
+		}
+	}
+
+	private Entry add(Entry entry) {
+		entries = Arrays.copyOf(entries, entries.length + 1);
+		entries[entries.length - 1] = entry;
+		return entry;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
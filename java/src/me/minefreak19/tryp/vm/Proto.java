@@ -0,0 +1,27 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.lex.token.Token;
+
+/**
+ * Compiled template of a proc, lambda, method or top-level script,
+ * immutable apart from the {@link PropertyCache}s among its constants.
+ * <p>
+ * A {@link VmClosure} pairs a proto with the upvalues it captured.
+ *
+ * @param locals   How many stack slots a call's variables take up, including slot 0 and the parameters.
+ * @param maxStack The most stack slots a call can use, including its variables.
+ */
+record Proto(String name,
+             int arity,
+             boolean isInitializer,
+             int upvalueCount,
+             int locals,
+             int maxStack,
+             byte[] code,
+             Object[] constants,
+             Token[] tokens) {
+	@Override
+	public String toString() {
+		return "<proto " + name + ">";
+	}
+}
@@ -0,0 +1,728 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.eval.Globals;
+import me.minefreak19.tryp.eval.Interpreter;
+import me.minefreak19.tryp.eval.Natives;
+import me.minefreak19.tryp.eval.RuntimeError;
+import me.minefreak19.tryp.eval.TrypCallable;
+import me.minefreak19.tryp.lex.token.Token;
+import me.minefreak19.tryp.tree.Stmt;
+import me.minefreak19.tryp.util.Diagnostics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static me.minefreak19.tryp.eval.Interpreter.areEqual;
+
+/**
+ * Stack-based bytecode VM, an alternative to the tree-walking {@link Interpreter}.
+ * <p>
+ * Programs behave exactly as they do in the tree-walker,
+ * down to the messages and locations of runtime errors.
+ * <p>
+ * Like {@link Interpreter}, it keeps numbers unboxed: the stack is a pair of arrays,
+ * and a number sits in {@link #numbers} with {@link #UNBOXED} in its place in {@link #stack}.
+ * Fields are laid out by {@link me.minefreak19.tryp.eval.Shape} as well,
+ * and every property access has a {@link PropertyCache} of its own.
+ */
+public final class VirtualMachine {
+	/**
+	 * Put in place of the receiver by {@link OpCode#GET_METHOD}
+	 * when the callee is a field and not a method.
+	 */
+	private static final Object NO_RECEIVER = new Object();
+
+	/**
+	 * How deep calls may nest before the program is stopped,
+	 * instead of growing the stack until memory runs out.
+	 */
+	private static final int MAX_FRAMES = 1 << 16;
+
+	private final Globals globals = new Globals();
+	private final Compiler compiler = new Compiler(globals);
+
+	/**
+	 * Stands in {@link #stack} for a number kept in the same slot of {@link #numbers}.
+	 * A number on the stack is always kept there, and is only boxed when it leaves the stack,
+	 * e.g. for a global, a field, or the argument of a native.
+	 */
+	private static final Object UNBOXED = new Object();
+
+	private Object[] stack = new Object[1024];
+	private double[] numbers = new double[stack.length];
+	private int sp = 0;
+
+	private Frame[] frames = new Frame[64];
+	private int frameCount = 0;
+
+	// sorted by slot, highest first
+	private VmUpvalue openUpvalues = null;
+
+	private static final class Frame {
+		VmClosure closure;
+		byte[] code;
+		Object[] constants;
+		int ip;
+		// stack index of slot 0
+		int base;
+		// stack index the result is returned to
+		int ret;
+
+		Token token() {
+			// every byte of an instruction carries its token,
+			// and ip is past the byte that was last read
+			return closure.proto.tokens()[ip - 1];
+		}
+	}
+
+	public VirtualMachine() {
+		Natives.define(globals::define);
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = new Frame();
+		}
+	}
+
+	/**
+	 * Compiles and runs {@code program}, unless compiling it reports errors to {@code diagnostics}.
+	 */
+	public void interpret(List<Stmt> program, Diagnostics diagnostics) {
+		Proto script = compiler.compile(program, diagnostics);
+		if (diagnostics.hadError()) return;
+
+		try {
+			var closure = new VmClosure(script);
+			stack[0] = closure;
+			sp = 1;
+			pushFrame(closure, 0, 0, 0);
+			run();
+		} catch (RuntimeError err) {
+			System.err.println(err.getLocalizedMessage());
+		} finally {
+			// run() doesn't clear popped slots, so don't keep their values alive
+			Arrays.fill(stack, null);
+			sp = 0;
+			frameCount = 0;
+			openUpvalues = null;
+		}
+	}
+
+	/**
+	 * Same as {@link Interpreter#isTruthy(Object)},
+	 * without the type switch that is too slow for the dispatch loop.
+	 */
+	private static boolean isTruthy(Object o) {
+		if (o instanceof Boolean b) return b;
+		return o != null;
+	}
+
+	/**
+	 * @return The value in {@code slot}, boxed if it is a number.
+	 */
+	private static Object box(Object[] stack, double[] numbers, int slot) {
+		Object value = stack[slot];
+		return value == UNBOXED ? (Object) numbers[slot] : value;
+	}
+
+	/**
+	 * Puts {@code value} in {@code slot}, unboxing it if it is a number.
+	 */
+	private static void put(Object[] stack, double[] numbers, int slot, Object value) {
+		if (value instanceof Double d) {
+			stack[slot] = UNBOXED;
+			numbers[slot] = d;
+		} else {
+			stack[slot] = value;
+		}
+	}
+
+	/**
+	 * Same as {@code a % b}, but as an integer division when both are small integers,
+	 * as they nearly always are, since the JIT makes a slow runtime call for a double one.
+	 */
+	private static double remainder(double a, double b) {
+		int x = (int) a;
+		int y = (int) b;
+		if (x == a && y == b && y != 0) {
+			// a zero remainder takes the sign of a, as it does for doubles
+			return Math.copySign(x % y, a);
+		}
+
+		return a % b;
+	}
+
+	private static int readU16(byte[] code, int ip) {
+		return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+	}
+
+	private static RuntimeError error(Frame frame, int ip, String message) {
+		frame.ip = ip;
+		return new RuntimeError(frame.token(), message);
+	}
+
+	@SuppressWarnings("DuplicatedCode")
+	private void run() {
+		Frame frame = frames[frameCount - 1];
+		byte[] code = frame.code;
+		Object[] constants = frame.constants;
+		Object[] stack = this.stack;
+		double[] numbers = this.numbers;
+		Object[] globalValues = globals.values();
+		int ip = frame.ip;
+		int base = frame.base;
+		int sp = this.sp;
+
+		while (true) {
+			switch (code[ip++]) {
+			case OpCode.CONSTANT -> {
+				put(stack, numbers, sp++, constants[readU16(code, ip)]);
+				ip += 2;
+			}
+			case OpCode.NIL -> stack[sp++] = null;
+			case OpCode.TRUE -> stack[sp++] = Boolean.TRUE;
+			case OpCode.FALSE -> stack[sp++] = Boolean.FALSE;
+
+			case OpCode.POP -> sp--;
+
+			case OpCode.GET_LOCAL -> {
+				int slot = base + (code[ip++] & 0xff);
+				stack[sp] = stack[slot];
+				numbers[sp++] = numbers[slot];
+			}
+			case OpCode.SET_LOCAL -> {
+				int slot = base + (code[ip++] & 0xff);
+				stack[slot] = stack[sp - 1];
+				numbers[slot] = numbers[sp - 1];
+			}
+			case OpCode.GET_UPVALUE -> {
+				var upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+				if (upvalue.slot >= 0) {
+					stack[sp] = stack[upvalue.slot];
+					numbers[sp++] = numbers[upvalue.slot];
+				} else {
+					put(stack, numbers, sp++, upvalue.value);
+				}
+			}
+			case OpCode.SET_UPVALUE -> {
+				var upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+				if (upvalue.slot >= 0) {
+					stack[upvalue.slot] = stack[sp - 1];
+					numbers[upvalue.slot] = numbers[sp - 1];
+				} else {
+					upvalue.value = box(stack, numbers, sp - 1);
+				}
+			}
+			case OpCode.GET_GLOBAL -> {
+				int index = readU16(code, ip);
+				ip += 2;
+				Object value = globalValues[index];
+				if (value == Globals.UNDEFINED) {
+					throw error(frame, ip, "Undefined variable `" + globals.name(index) + "`.");
+				}
+				put(stack, numbers, sp++, value);
+			}
+			case OpCode.SET_GLOBAL -> {
+				int index = readU16(code, ip);
+				ip += 2;
+				if (globalValues[index] == Globals.UNDEFINED) {
+					throw error(frame, ip, "Undefined variable `" + globals.name(index) + "`.");
+				}
+				globalValues[index] = box(stack, numbers, sp - 1);
+			}
+			case OpCode.STORE_LOCAL -> {
+				int slot = base + (code[ip++] & 0xff);
+				stack[slot] = stack[--sp];
+				numbers[slot] = numbers[sp];
+			}
+			case OpCode.STORE_UPVALUE -> {
+				var upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+				sp--;
+				if (upvalue.slot >= 0) {
+					stack[upvalue.slot] = stack[sp];
+					numbers[upvalue.slot] = numbers[sp];
+				} else {
+					upvalue.value = box(stack, numbers, sp);
+				}
+			}
+			case OpCode.STORE_GLOBAL -> {
+				int index = readU16(code, ip);
+				ip += 2;
+				if (globalValues[index] == Globals.UNDEFINED) {
+					throw error(frame, ip, "Undefined variable `" + globals.name(index) + "`.");
+				}
+				globalValues[index] = box(stack, numbers, --sp);
+			}
+			case OpCode.DEFINE_GLOBAL -> {
+				globalValues[readU16(code, ip)] = box(stack, numbers, --sp);
+				ip += 2;
+			}
+
+			case OpCode.GET_PROPERTY -> {
+				var cache = (PropertyCache) constants[readU16(code, ip)];
+				ip += 2;
+				if (!(stack[sp - 1] instanceof VmInstance instance)) {
+					throw error(frame, ip, "Trying to access property of non-instance");
+				}
+				put(stack, numbers, sp - 1, getProperty(instance, cache, frame, ip));
+			}
+			case OpCode.SET_PROPERTY -> {
+				var cache = (PropertyCache) constants[readU16(code, ip)];
+				ip += 2;
+				if (!(stack[sp - 2] instanceof VmInstance instance)) {
+					throw error(frame, ip, "Only instances can have fields.");
+				}
+				sp--;
+				cache.set(instance, box(stack, numbers, sp));
+				stack[sp - 1] = stack[sp];
+				numbers[sp - 1] = numbers[sp];
+			}
+			case OpCode.STORE_PROPERTY -> {
+				var cache = (PropertyCache) constants[readU16(code, ip)];
+				ip += 2;
+				if (!(stack[sp - 2] instanceof VmInstance instance)) {
+					throw error(frame, ip, "Only instances can have fields.");
+				}
+				cache.set(instance, box(stack, numbers, sp - 1));
+				sp -= 2;
+			}
+			case OpCode.CHECK_INSTANCE -> {
+				if (!(stack[sp - 1] instanceof VmInstance)) {
+					throw error(frame, ip, "Only instances can have fields.");
+				}
+			}
+			case OpCode.GET_SUPER -> {
+				var name = (String) constants[readU16(code, ip)];
+				ip += 2;
+				var superclass = (VmClass) stack[--sp];
+				stack[sp - 1] = new VmBoundMethod(stack[sp - 1], findSuperMethod(superclass, name, frame, ip));
+			}
+
+			case OpCode.EQUAL -> {
+				sp--;
+				stack[sp - 1] = areEqualAt(stack, numbers, sp - 1, sp);
+			}
+			case OpCode.NOT_EQUAL -> {
+				sp--;
+				stack[sp - 1] = !areEqualAt(stack, numbers, sp - 1, sp);
+			}
+			case OpCode.GREATER -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				stack[sp - 1] = numbers[sp - 1] > numbers[sp];
+			}
+			case OpCode.GREATER_EQUAL -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				stack[sp - 1] = numbers[sp - 1] >= numbers[sp];
+			}
+			case OpCode.LESS -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				stack[sp - 1] = numbers[sp - 1] < numbers[sp];
+			}
+			case OpCode.LESS_EQUAL -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				stack[sp - 1] = numbers[sp - 1] <= numbers[sp];
+			}
+			case OpCode.ADD -> {
+				sp--;
+				if (stack[sp - 1] == UNBOXED && stack[sp] == UNBOXED) {
+					numbers[sp - 1] += numbers[sp];
+				} else {
+					put(stack, numbers, sp - 1,
+							add(box(stack, numbers, sp - 1), box(stack, numbers, sp), frame, ip));
+				}
+			}
+			case OpCode.ADD_CONSTANT -> {
+				Object b = constants[readU16(code, ip)];
+				ip += 2;
+				if (stack[sp - 1] == UNBOXED) {
+					numbers[sp - 1] += (double) b;
+				} else {
+					put(stack, numbers, sp - 1, add(stack[sp - 1], b, frame, ip));
+				}
+			}
+			case OpCode.INCREMENT_LOCAL -> {
+				Object b = constants[readU16(code, ip)];
+				int slot = base + (code[ip + 2] & 0xff);
+				ip += 3;
+				if (stack[slot] == UNBOXED) {
+					numbers[slot] += (double) b;
+				} else {
+					put(stack, numbers, slot, add(stack[slot], b, frame, ip));
+				}
+			}
+			case OpCode.SUBTRACT_CONSTANT -> {
+				double b = (double) constants[readU16(code, ip)];
+				ip += 2;
+				if (stack[sp - 1] != UNBOXED) throw notNumbers(frame, ip);
+				numbers[sp - 1] -= b;
+			}
+			case OpCode.SUBTRACT -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				numbers[sp - 1] -= numbers[sp];
+			}
+			case OpCode.MULTIPLY -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				numbers[sp - 1] *= numbers[sp];
+			}
+			case OpCode.DIVIDE -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				numbers[sp - 1] /= numbers[sp];
+			}
+			case OpCode.MODULO -> {
+				sp--;
+				if (stack[sp - 1] != UNBOXED || stack[sp] != UNBOXED) throw notNumbers(frame, ip);
+				numbers[sp - 1] = remainder(numbers[sp - 1], numbers[sp]);
+			}
+			case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+			// like the tree-walker, this doesn't check its operand, so the cast fails on one that isn't a number
+			case OpCode.NEGATE -> {
+				numbers[sp - 1] = -(stack[sp - 1] == UNBOXED ? numbers[sp - 1] : (double) stack[sp - 1]);
+				stack[sp - 1] = UNBOXED;
+			}
+
+			case OpCode.JUMP -> ip += 2 + readU16(code, ip);
+			case OpCode.JUMP_IF_FALSE -> {
+				if (!isTruthy(stack[sp - 1])) ip += readU16(code, ip);
+				ip += 2;
+			}
+			case OpCode.JUMP_IF_TRUE -> {
+				if (isTruthy(stack[sp - 1])) ip += readU16(code, ip);
+				ip += 2;
+			}
+			case OpCode.POP_JUMP_IF_FALSE -> {
+				Object condition = stack[--sp];
+				if (!isTruthy(condition)) ip += readU16(code, ip);
+				ip += 2;
+			}
+			case OpCode.LOOP -> ip -= readU16(code, ip) - 2;
+			case OpCode.JUMP_IF_NOT_GREATER -> {
+				sp -= 2;
+				ip += 2;
+				if (stack[sp] != UNBOXED || stack[sp + 1] != UNBOXED) throw notNumbers(frame, ip);
+				if (!(numbers[sp] > numbers[sp + 1])) ip += readU16(code, ip - 2);
+			}
+			case OpCode.JUMP_IF_NOT_GREATER_EQUAL -> {
+				sp -= 2;
+				ip += 2;
+				if (stack[sp] != UNBOXED || stack[sp + 1] != UNBOXED) throw notNumbers(frame, ip);
+				if (!(numbers[sp] >= numbers[sp + 1])) ip += readU16(code, ip - 2);
+			}
+			case OpCode.JUMP_IF_NOT_LESS -> {
+				sp -= 2;
+				ip += 2;
+				if (stack[sp] != UNBOXED || stack[sp + 1] != UNBOXED) throw notNumbers(frame, ip);
+				if (!(numbers[sp] < numbers[sp + 1])) ip += readU16(code, ip - 2);
+			}
+			case OpCode.JUMP_IF_NOT_LESS_EQUAL -> {
+				sp -= 2;
+				ip += 2;
+				if (stack[sp] != UNBOXED || stack[sp + 1] != UNBOXED) throw notNumbers(frame, ip);
+				if (!(numbers[sp] <= numbers[sp + 1])) ip += readU16(code, ip - 2);
+			}
+
+			case OpCode.CALL, OpCode.INVOKE -> {
+				boolean invoke = code[ip - 1] == OpCode.INVOKE;
+				int argc = code[ip++] & 0xff;
+				int slot0 = sp - argc - 1;
+				Object callee;
+				if (invoke) {
+					callee = stack[slot0 - 1];
+					if (stack[slot0] == NO_RECEIVER) stack[slot0] = callee;
+				} else {
+					callee = stack[slot0];
+				}
+
+				frame.ip = ip;
+				this.sp = sp;
+				if (call(callee, argc, slot0, invoke ? slot0 - 1 : slot0, frame)) {
+					frame = frames[frameCount - 1];
+					code = frame.code;
+					constants = frame.constants;
+					stack = this.stack;
+					numbers = this.numbers;
+					ip = frame.ip;
+					base = frame.base;
+				}
+				sp = this.sp;
+			}
+			case OpCode.GET_METHOD -> {
+				var cache = (PropertyCache) constants[readU16(code, ip)];
+				ip += 2;
+				if (!(stack[sp - 1] instanceof VmInstance instance)) {
+					throw error(frame, ip, "Trying to access property of non-instance");
+				}
+
+				VmClosure method = cache.method(instance);
+				if (method != null) {
+					stack[sp - 1] = method;
+					stack[sp++] = instance;
+				} else {
+					put(stack, numbers, sp - 1, getProperty(instance, cache, frame, ip));
+					stack[sp++] = NO_RECEIVER;
+				}
+			}
+			case OpCode.GET_SUPER_METHOD -> {
+				var name = (String) constants[readU16(code, ip)];
+				ip += 2;
+				var superclass = (VmClass) stack[sp - 1];
+				stack[sp - 1] = stack[sp - 2];
+				stack[sp - 2] = findSuperMethod(superclass, name, frame, ip);
+			}
+			case OpCode.CLOSURE -> {
+				var closure = new VmClosure((Proto) constants[readU16(code, ip)]);
+				ip += 2;
+				for (int i = 0; i < closure.upvalues.length; i++) {
+					boolean isLocal = code[ip++] != 0;
+					int index = code[ip++] & 0xff;
+					closure.upvalues[i] = isLocal
+							                      ? captureUpvalue(base + index)
+							                      : frame.closure.upvalues[index];
+				}
+				stack[sp++] = closure;
+			}
+			case OpCode.CLOSE_UPVALUES -> closeUpvalues(base + (code[ip++] & 0xff));
+			case OpCode.RETURN -> {
+				Object result = stack[--sp];
+				double number = numbers[sp];
+				closeUpvalues(base);
+				Arrays.fill(stack, frame.ret, sp, null);
+
+				frameCount--;
+				if (frameCount == 0) {
+					this.sp = 0;
+					return;
+				}
+
+				sp = frame.ret;
+				stack[sp] = result;
+				numbers[sp++] = number;
+
+				frame = frames[frameCount - 1];
+				code = frame.code;
+				constants = frame.constants;
+				ip = frame.ip;
+				base = frame.base;
+			}
+
+			case OpCode.CLASS -> {
+				var name = (String) constants[readU16(code, ip)];
+				boolean hasSuper = code[ip + 2] != 0;
+				ip += 3;
+
+				VmClass superclass = null;
+				if (hasSuper) {
+					if (!(stack[sp - 1] instanceof VmClass klass)) {
+						throw error(frame, ip, "Superclass must be a class.");
+					}
+					superclass = klass;
+					sp--;
+				}
+
+				stack[sp++] = new VmClass(name, superclass);
+			}
+			case OpCode.METHOD -> {
+				var name = (String) constants[readU16(code, ip)];
+				ip += 2;
+				var klass = (VmClass) stack[sp - 2];
+				klass.defineMethod(name, (VmClosure) stack[--sp]);
+			}
+			case OpCode.STATIC_METHOD -> {
+				var name = (String) constants[readU16(code, ip)];
+				ip += 2;
+				var klass = (VmClass) stack[sp - 2];
+				klass.metaclass().defineMethod(name, (VmClosure) stack[--sp]);
+			}
+
+			default -> throw new AssertionError("unreachable: opcode " + code[ip - 1]);
+			}
+		}
+	}
+
+	//region Slow paths, kept out of run() so that it stays small enough for the JIT
+
+	private static RuntimeError notNumbers(Frame frame, int ip) {
+		Token op = frame.closure.proto.tokens()[ip - 1];
+		return error(frame, ip, "Operand for " + op.getText() + " must be a number");
+	}
+
+	/**
+	 * Same as {@link Interpreter#areEqual(Object, Object)}, for the values in slots {@code a} and {@code b}.
+	 */
+	private static boolean areEqualAt(Object[] stack, double[] numbers, int a, int b) {
+		if (stack[a] == UNBOXED && stack[b] == UNBOXED) {
+			// Double.compare() is 0 exactly when Double.equals() is true, which is what areEqual() uses
+			return Double.compare(numbers[a], numbers[b]) == 0;
+		}
+
+		return areEqual(box(stack, numbers, a), box(stack, numbers, b));
+	}
+
+	private static Object add(Object a, Object b, Frame frame, int ip) {
+		if (a instanceof String strLeft && b instanceof String strRight)
+			return strLeft + strRight;
+		else if (a instanceof String strLeft)
+			return strLeft + Interpreter.stringify(b);
+		else if (b instanceof String strRight)
+			return Interpreter.stringify(a) + strRight;
+		else if (a instanceof Double dLeft && b instanceof Double dRight)
+			return dLeft + dRight;
+
+		Token op = frame.closure.proto.tokens()[ip - 1];
+		throw error(frame, ip, "Can't apply operator `" + op.getText()
+				                       + "` to operands "
+				                       + a + " and " + b);
+	}
+
+	private static Object getProperty(VmInstance instance, PropertyCache cache, Frame frame, int ip) {
+		Object value = cache.get(instance);
+		if (value == PropertyCache.MISSING) {
+			throw error(frame, ip, "Undefined property `" + cache.name + "`");
+		}
+
+		return value;
+	}
+
+	private static VmClosure findSuperMethod(VmClass superclass, String name, Frame frame, int ip) {
+		VmClosure method = superclass.findMethod(name);
+		if (method == null) {
+			throw error(frame, ip, "Undefined property `" + name + "` of superclass.");
+		}
+
+		return method;
+	}
+
+	private VmUpvalue captureUpvalue(int slot) {
+		VmUpvalue prev = null;
+		VmUpvalue upvalue = openUpvalues;
+		while (upvalue != null && upvalue.slot > slot) {
+			prev = upvalue;
+			upvalue = upvalue.next;
+		}
+
+		if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+		var created = new VmUpvalue(slot, upvalue);
+		if (prev == null) {
+			openUpvalues = created;
+		} else {
+			prev.next = created;
+		}
+
+		return created;
+	}
+
+	/**
+	 * Closes every open upvalue at or above {@code slot}.
+	 */
+	private void closeUpvalues(int slot) {
+		while (openUpvalues != null && openUpvalues.slot >= slot) {
+			var upvalue = openUpvalues;
+			upvalue.value = box(stack, numbers, upvalue.slot);
+			upvalue.slot = -1;
+			openUpvalues = upvalue.next;
+			upvalue.next = null;
+		}
+	}
+
+	/**
+	 * Calls {@code callee} with the {@code argc} arguments on top of the stack.
+	 * Slot 0 of the callee's frame, just below the arguments, must already
+	 * hold the callee or its receiver.
+	 *
+	 * @param ret Where the result is stored. The stack is cut back to just above it.
+	 *
+	 * @return Whether a new frame was pushed. Otherwise, the result is already in place.
+	 */
+	private boolean call(Object callee, int argc, int slot0, int ret, Frame caller) {
+		if (frameCount == MAX_FRAMES) {
+			throw new RuntimeError(caller.token(), "Stack overflow.");
+		}
+
+		// an instanceof chain, because a pattern switch bootstraps a (slow) type switch
+		if (callee instanceof VmClosure closure) {
+			checkArity(closure.proto.arity(), argc, caller);
+			pushFrame(closure, slot0, ret, argc);
+			return true;
+		}
+
+		if (callee instanceof VmBoundMethod bound) {
+			checkArity(bound.method().proto.arity(), argc, caller);
+			stack[slot0] = bound.receiver();
+			pushFrame(bound.method(), slot0, ret, argc);
+			return true;
+		}
+
+		Object result;
+		if (callee instanceof VmClass klass) {
+			VmClosure constructor = klass.initializer;
+			checkArity(constructor == null ? 0 : constructor.proto.arity(), argc, caller);
+
+			var instance = new VmInstance(klass);
+			if (constructor != null) {
+				stack[slot0] = instance;
+				pushFrame(constructor, slot0, ret, argc);
+				return true;
+			}
+
+			result = instance;
+		} else if (callee instanceof TrypCallable f) {
+			checkArity(f.arity(), argc, caller);
+			// natives never use the interpreter
+			var args = argc == 0 ? TrypCallable.NO_ARGS : new Object[argc];
+			for (int i = 0; i < argc; i++) {
+				args[i] = box(stack, numbers, slot0 + 1 + i);
+			}
+			result = f.call(null, args);
+		} else {
+			throw new RuntimeError(caller.token(), "Can't call non-callable expression");
+		}
+
+		put(stack, numbers, ret, result);
+		Arrays.fill(stack, ret + 1, sp, null);
+		sp = ret + 1;
+		return false;
+	}
+
+	private static void checkArity(int arity, int argc, Frame caller) {
+		if (argc != arity) {
+			throw new RuntimeError(caller.token(),
+					"Incorrect number of arguments. (Expected = " + arity + ", actual = "
+							+ argc + ")");
+		}
+	}
+
+	private void pushFrame(VmClosure closure, int slot0, int ret, int argc) {
+		if (frameCount == frames.length) {
+			frames = Arrays.copyOf(frames, frameCount * 2);
+			for (int i = frameCount; i < frames.length; i++) {
+				frames[i] = new Frame();
+			}
+		}
+
+		Proto proto = closure.proto;
+		if (slot0 + proto.maxStack() > stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(stack.length * 2, slot0 + proto.maxStack()));
+			numbers = Arrays.copyOf(numbers, stack.length);
+		}
+
+		// the variables after the parameters are always stored before they are read,
+		// but whatever was left in their slots shouldn't be kept alive
+		sp = slot0 + proto.locals();
+		Arrays.fill(stack, slot0 + 1 + argc, sp, null);
+
+		Frame frame = frames[frameCount++];
+		frame.closure = closure;
+		frame.code = proto.code();
+		frame.constants = proto.constants();
+		frame.ip = 0;
+		frame.base = slot0;
+		frame.ret = ret;
+	}
+
+	//endregion
+}
@@ -0,0 +1,25 @@
+package me.minefreak19.tryp.vm;
+
+/**
+ * A method that was accessed as a value, e.g. {@code var m = obj.method;}.
+ * <p>
+ * Direct calls like {@code obj.method()} never create one of these,
+ * see {@link OpCode#GET_METHOD}.
+ */
+record VmBoundMethod(Object receiver, VmClosure method) {
+	@Override
+	public boolean equals(Object obj) {
+		// every access binds anew, like TrypBoundMethod
+		return this == obj;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		return method.toString();
+	}
+}
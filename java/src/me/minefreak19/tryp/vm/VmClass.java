@@ -0,0 +1,76 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.eval.Shape;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runtime class of the {@link VirtualMachine}.
+ * <p>
+ * Like {@link me.minefreak19.tryp.eval.TrypClass}, a class is itself an instance
+ * of a metaclass that holds its static methods.
+ */
+final class VmClass extends VmInstance {
+	static final String INITIALIZER = "$init";
+
+	final String name;
+	final VmClass superclass;
+	final Map<String, VmClosure> methods = new HashMap<>();
+	final Shape instanceShape = Shape.root();
+	// its own or inherited, looked up once rather than on every construction
+	VmClosure initializer;
+
+	VmClass(String name, VmClass superclass) {
+		super(new VmClass("$static$" + name, superclass, null));
+		this.name = name;
+		this.superclass = superclass;
+		this.initializer = superclass == null ? null : superclass.initializer;
+	}
+
+	// Avoids the metaclass logic of the other constructor.
+	@SuppressWarnings("unused")
+	private VmClass(String name, VmClass superclass, Void dummy) {
+		super(null);
+		this.name = name;
+		this.superclass = superclass;
+	}
+
+	VmClass metaclass() {
+		return klass;
+	}
+
+	void defineMethod(String name, VmClosure method) {
+		methods.put(name, method);
+		if (name.equals(INITIALIZER)) initializer = method;
+	}
+
+	VmClosure findMethod(String name) {
+		for (VmClass k = this; k != null; k = k.superclass) {
+			VmClosure method = k.methods.get(name);
+			if (method != null) return method;
+		}
+
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (obj == null || obj.getClass() != this.getClass()) return false;
+		var that = (VmClass) obj;
+		return Objects.equals(this.name, that.name) &&
+				       Objects.equals(this.methods, that.methods);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name);
+	}
+}
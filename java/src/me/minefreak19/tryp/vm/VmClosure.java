@@ -0,0 +1,16 @@
+package me.minefreak19.tryp.vm;
+
+final class VmClosure {
+	final Proto proto;
+	final VmUpvalue[] upvalues;
+
+	VmClosure(Proto proto) {
+		this.proto = proto;
+		this.upvalues = new VmUpvalue[proto.upvalueCount()];
+	}
+
+	@Override
+	public String toString() {
+		return "<proc " + proto.name() + ">";
+	}
+}
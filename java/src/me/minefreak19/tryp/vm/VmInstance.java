@@ -0,0 +1,57 @@
+package me.minefreak19.tryp.vm;
+
+import me.minefreak19.tryp.eval.Shape;
+
+import java.util.Arrays;
+
+/**
+ * Runtime instance of the {@link VirtualMachine}.
+ * <p>
+ * Like {@link me.minefreak19.tryp.eval.TrypInstance}, its fields are kept in a plain array
+ * laid out by its {@link Shape}.
+ */
+class VmInstance {
+	private static final Object[] NO_VALUES = {};
+
+	protected VmClass klass;
+	Shape shape;
+	Object[] values;
+
+	/**
+	 * @param klass The class, or null for a metaclass,
+	 *              which is never seen by programs and so never has fields.
+	 */
+	VmInstance(VmClass klass) {
+		this.klass = klass;
+		this.shape = klass == null ? Shape.root() : klass.instanceShape;
+
+		int expected = shape.expectedSize();
+		this.values = expected == 0 ? NO_VALUES : new Object[expected];
+	}
+
+	void set(String name, Object value) {
+		int index = shape.indexOf(name);
+		if (index >= 0) {
+			values[index] = value;
+		} else {
+			setAt(shape.size(), shape.with(name), value);
+		}
+	}
+
+	/**
+	 * Sets the field in slot {@code index}, after which the instance has the shape {@code next}.
+	 */
+	void setAt(int index, Shape next, Object value) {
+		if (index >= values.length) {
+			values = Arrays.copyOf(values, Math.max(next.expectedSize(), index + 1));
+		}
+
+		shape = next;
+		values[index] = value;
+	}
+
+	@Override
+	public String toString() {
+		return "<" + klass.name + " instance>";
+	}
+}
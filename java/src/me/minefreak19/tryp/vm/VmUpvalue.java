@@ -0,0 +1,21 @@
+package me.minefreak19.tryp.vm;
+
+/**
+ * A variable captured by a {@link VmClosure}.
+ * <p>
+ * While the variable is still on the VM stack the upvalue is open,
+ * and {@link #slot} points to it. Once the variable goes out of scope
+ * the upvalue is closed: its value is moved into {@link #value}
+ * and {@link #slot} is set to {@code -1}.
+ */
+final class VmUpvalue {
+	int slot;
+	Object value;
+	// next open upvalue, further down the stack
+	VmUpvalue next;
+
+	VmUpvalue(int slot, VmUpvalue next) {
+		this.slot = slot;
+		this.next = next;
+	}
+}